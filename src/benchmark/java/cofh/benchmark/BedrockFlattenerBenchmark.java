@@ -0,0 +1,127 @@
+package cofh.benchmark;
+
+import cofh.core.world.BedrockFlattener;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link BedrockFlattener} against the previous per-block world path of WorldHandler.replaceBedrock.
+ *
+ * Every invocation needs a chunk with rough bedrock, so each iteration is a batch of invocations, and the chunks for all of them are generated before the
+ * iteration starts. The score is the time per chunk.
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, batchSize = BedrockFlattenerBenchmark.BATCH)
+@Measurement (iterations = 10, batchSize = BedrockFlattenerBenchmark.BATCH)
+@Fork (1)
+public class BedrockFlattenerBenchmark {
+
+	public static final int BATCH = 1024;
+
+	@Param ({ "1", "2", "5" })
+	public int layers;
+
+	private BenchmarkWorld world;
+	private int chunkX;
+
+	@Setup (Level.Trial)
+	public void setupTrial() {
+
+		BenchmarkWorld.bootstrap();
+		world = new BenchmarkWorld(1234L);
+	}
+
+	@Setup (Level.Iteration)
+	public void setupIteration() {
+
+		world.unloadAll();
+		for (int x = 0; x <= BATCH; x++) {
+			world.getChunkFromChunkCoords(x, 0);
+			world.getChunkFromChunkCoords(x, 1);
+		}
+		chunkX = 0;
+	}
+
+	@Benchmark
+	public boolean section() {
+
+		return BedrockFlattener.flatten(world, world.getChunkFromChunkCoords(chunkX++, 0), layers);
+	}
+
+	@Benchmark
+	public boolean perBlock() {
+
+		return flattenPerBlock(world, chunkX++, 0, layers);
+	}
+
+	/**
+	 * The pre-BedrockFlattener implementation, kept as the baseline. It used to work on the populate area offset by 8 blocks; here it flattens the chunk's own
+	 * columns, as BedrockFlattener does, so both sides do the same work.
+	 */
+	static boolean flattenPerBlock(World world, int chunkX, int chunkZ, int layersBedrock) {
+
+		int offsetX = chunkX * 16;
+		int offsetZ = chunkZ * 16;
+
+		boolean isVoidAge = !world.getBlockState(new BlockPos(offsetX, 0, offsetZ)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
+		isVoidAge |= !world.getBlockState(new BlockPos(offsetX + 4, 0, offsetZ + 4)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
+		isVoidAge |= !world.getBlockState(new BlockPos(offsetX + 8, 0, offsetZ + 8)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
+		isVoidAge |= !world.getBlockState(new BlockPos(offsetX + 12, 0, offsetZ + 12)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
+
+		if (isVoidAge) {
+			return false;
+		}
+		IBlockState filler = Blocks.STONE.getDefaultState();
+		boolean changed = false;
+
+		for (int blockX = 0; blockX < 16; blockX++) {
+			for (int blockZ = 0; blockZ < 16; blockZ++) {
+				for (int blockY = 5; blockY > layersBedrock - 1; blockY--) {
+					BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
+					IBlockState state = world.getBlockState(pos);
+					if (state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
+						changed |= world.setBlockState(pos, filler, 2);
+					}
+				}
+				for (int blockY = layersBedrock - 1; blockY > 0; blockY--) {
+					BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
+					IBlockState state = world.getBlockState(pos);
+					if (!state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
+						changed |= world.setBlockState(pos, Blocks.BEDROCK.getDefaultState(), 2);
+					}
+				}
+			}
+		}
+		int worldHeight = world.getActualHeight();
+
+		if (world.getBlockState(new BlockPos(offsetX, worldHeight - 1, offsetZ)).getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
+			for (int blockX = 0; blockX < 16; blockX++) {
+				for (int blockZ = 0; blockZ < 16; blockZ++) {
+					for (int blockY = worldHeight - 2; blockY > worldHeight - 6; blockY--) {
+						BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
+						IBlockState state = world.getBlockState(pos);
+						if (state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
+							changed |= world.setBlockState(pos, filler, 2);
+						}
+					}
+					for (int blockY = worldHeight - layersBedrock; blockY < worldHeight - 1; blockY++) {
+						BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
+						IBlockState state = world.getBlockState(pos);
+						if (!state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
+							changed |= world.setBlockState(pos, Blocks.BEDROCK.getDefaultState(), 2);
+						}
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+}
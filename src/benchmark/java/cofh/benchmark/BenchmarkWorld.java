@@ -0,0 +1,141 @@
+package cofh.benchmark;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.GameType;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldProviderSurface;
+import net.minecraft.world.WorldSettings;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkPrimer;
+import net.minecraft.world.chunk.IChunkProvider;
+import net.minecraft.world.storage.SaveHandlerMP;
+import net.minecraft.world.storage.WorldInfo;
+
+import java.util.Random;
+
+/**
+ * A headless, in-memory overworld for benchmarks. Chunks are generated on demand from a fixed seed as plain stone terrain over vanilla-style rough bedrock.
+ */
+public class BenchmarkWorld extends World {
+
+	private static boolean bootstrapped;
+
+	public static final int SEA_LEVEL = 63;
+
+	public static synchronized void bootstrap() {
+
+		if (!bootstrapped) {
+			Bootstrap.register();
+			bootstrapped = true;
+		}
+	}
+
+	private final long seed;
+
+	/* Successful block changes, for benchmarks that report blocks placed. */
+	public long blocksPlaced;
+
+	public BenchmarkWorld(long seed) {
+
+		super(new SaveHandlerMP(), new WorldInfo(new WorldSettings(seed, GameType.SURVIVAL, true, false, WorldType.DEFAULT), "benchmark"), new WorldProviderSurface(), new Profiler(), false);
+		this.seed = seed;
+		provider.registerWorld(this);
+		chunkProvider = createChunkProvider();
+	}
+
+	public void unloadAll() {
+
+		((Provider) chunkProvider).chunks.clear();
+	}
+
+	protected Chunk generateChunk(int x, int z) {
+
+		Random rand = new Random(seed ^ ChunkPos.asLong(x, z));
+		ChunkPrimer primer = new ChunkPrimer();
+		IBlockState stone = Blocks.STONE.getDefaultState();
+		IBlockState bedrock = Blocks.BEDROCK.getDefaultState();
+
+		for (int blockX = 0; blockX < 16; blockX++) {
+			for (int blockZ = 0; blockZ < 16; blockZ++) {
+				for (int blockY = 0; blockY < SEA_LEVEL; blockY++) {
+					primer.setBlockState(blockX, blockY, blockZ, blockY <= rand.nextInt(5) ? bedrock : stone);
+				}
+			}
+		}
+		Chunk chunk = new Chunk(this, primer, x, z);
+		chunk.generateSkylightMap();
+		chunk.setTerrainPopulated(true);
+		chunk.setLightPopulated(true);
+		return chunk;
+	}
+
+	@Override
+	public boolean setBlockState(BlockPos pos, IBlockState state, int flags) {
+
+		if (super.setBlockState(pos, state, flags)) {
+			++blocksPlaced;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	protected IChunkProvider createChunkProvider() {
+
+		return new Provider();
+	}
+
+	@Override
+	protected boolean isChunkLoaded(int x, int z, boolean allowEmpty) {
+
+		return ((Provider) chunkProvider).chunks.containsKey(ChunkPos.asLong(x, z));
+	}
+
+	private class Provider implements IChunkProvider {
+
+		final TLongObjectHashMap<Chunk> chunks = new TLongObjectHashMap<>(1024);
+
+		@Override
+		public Chunk getLoadedChunk(int x, int z) {
+
+			return chunks.get(ChunkPos.asLong(x, z));
+		}
+
+		@Override
+		public Chunk provideChunk(int x, int z) {
+
+			long key = ChunkPos.asLong(x, z);
+			Chunk chunk = chunks.get(key);
+			if (chunk == null) {
+				chunk = generateChunk(x, z);
+				chunks.put(key, chunk);
+			}
+			return chunk;
+		}
+
+		@Override
+		public boolean tick() {
+
+			return false;
+		}
+
+		@Override
+		public String makeString() {
+
+			return "BenchmarkChunkCache: " + chunks.size();
+		}
+
+		public boolean isChunkGeneratedAt(int x, int z) {
+
+			return chunks.containsKey(ChunkPos.asLong(x, z));
+		}
+	}
+
+}
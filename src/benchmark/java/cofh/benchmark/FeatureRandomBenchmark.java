@@ -0,0 +1,97 @@
+package cofh.benchmark;
+
+import cofh.core.world.FeatureRandom;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link FeatureRandom} against {@link Random} for the calls features make, and for seeding a generator per chunk.
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 10)
+@Fork (1)
+public class FeatureRandomBenchmark {
+
+	public static final int CALLS = 1024;
+
+	@Param ({ "java", "feature" })
+	public String generator;
+
+	private Random random;
+	private long seed;
+
+	@Setup (Level.Trial)
+	public void setupTrial() {
+
+		random = "java".equals(generator) ? new Random(1234L) : new FeatureRandom(1234L);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation (CALLS)
+	public int nextIntBounded() {
+
+		int r = 0;
+		for (int i = 0; i < CALLS; ++i) {
+			r += random.nextInt(i + 1);
+		}
+		return r;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation (CALLS)
+	public double nextDouble() {
+
+		double r = 0;
+		for (int i = 0; i < CALLS; ++i) {
+			r += random.nextDouble();
+		}
+		return r;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation (CALLS)
+	public float nextFloat() {
+
+		float r = 0;
+		for (int i = 0; i < CALLS; ++i) {
+			r += random.nextFloat();
+		}
+		return r;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation (CALLS)
+	public long nextLong() {
+
+		long r = 0;
+		for (int i = 0; i < CALLS; ++i) {
+			r += random.nextLong();
+		}
+		return r;
+	}
+
+	/**
+	 * The previous retrogen seeding allocated a Random per chunk; FeatureRandom is reseeded in place.
+	 */
+	@Benchmark
+	public int seedChunk() {
+
+		++seed;
+		if ("java".equals(generator)) {
+			Random rand = new Random(seed);
+			/* copied as it was: `>> 2 + 1L` parses as `>> 3`, which does not change the cost */
+			long xSeed = rand.nextLong() >> 2 + 1L;
+			long zSeed = rand.nextLong() >> 2 + 1L;
+			rand.setSeed(xSeed * (int) seed + zSeed * (int) (seed >> 8) ^ seed);
+			return rand.nextInt(16);
+		}
+		((FeatureRandom) random).setFeatureSeed(FeatureRandom.getChunkSeed(seed, (int) seed, (int) (seed >> 8)), "ore");
+		return random.nextInt(16);
+	}
+
+}
@@ -0,0 +1,124 @@
+package cofh.benchmark;
+
+import cofh.core.init.CoreProps;
+import cofh.core.world.FeatureParser;
+import cofh.core.world.FeatureRandom;
+import cofh.lib.world.IFeatureGenerator;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each feature template on {@link BenchmarkWorld}, over a region of 32x32 chunks with a fixed seed.
+ *
+ * The features are built by {@link FeatureParser} from cofh/benchmark/worldgen.json, one entry per template. The score is the time per chunk; the
+ * blocksPlaced counter is the blocks placed in each iteration. Every invocation needs untouched terrain, so each iteration is a batch of invocations, and the
+ * terrain for all of them is generated before the iteration starts, side by side. It is not measured, except for chunks a feature reaches beyond a region's
+ * one-chunk border.
+ *
+ * With compiled=false the number values of the entry are parsed without compiling them (see {@link FeatureParser#parseFeature(String, Config, boolean)}),
+ * which shows what compiling them saves per chunk.
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 3, batchSize = WorldGenBenchmark.BATCH)
+@Measurement (iterations = 10, batchSize = WorldGenBenchmark.BATCH)
+@Fork (1)
+public class WorldGenBenchmark {
+
+	public static final long SEED = 1234L;
+	public static final int REGION = 32;
+	public static final int CHUNKS = REGION * REGION;
+	public static final int BATCH = 4;
+	/* the distance between the regions of a batch, in chunks, which leaves room for features that reach past a region's border */
+	public static final int SPACING = REGION + 4;
+
+	private static boolean initialized;
+
+	@Param ({ "uniform", "gaussian", "fractal", "cave", "surface", "geode", "boulder", "decoration", "underfluid" })
+	public String template;
+
+	@Param ({ "true", "false" })
+	public boolean compiled;
+
+	private BenchmarkWorld world;
+	private IFeatureGenerator feature;
+	private final FeatureRandom random = new FeatureRandom();
+	private int region;
+
+	@Setup (Level.Trial)
+	public void setupTrial() throws IOException {
+
+		BenchmarkWorld.bootstrap();
+		initialize();
+
+		Config entries = ConfigFactory.parseResources(WorldGenBenchmark.class, "worldgen.json").resolve().getConfig("populate");
+		feature = FeatureParser.parseFeature(template, entries.getConfig(template), compiled);
+		if (feature == null) {
+			throw new IllegalStateException("Could not build the '" + template + "' feature.");
+		}
+		world = new BenchmarkWorld(SEED);
+	}
+
+	@Setup (Level.Iteration)
+	public void setupIteration() {
+
+		world.unloadAll();
+		for (int i = 0; i < BATCH; i++) {
+			for (int x = -1; x <= REGION; x++) {
+				for (int z = -1; z <= REGION; z++) {
+					world.getChunkFromChunkCoords(i * SPACING + x, z);
+				}
+			}
+		}
+		region = 0;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation (CHUNKS)
+	public void generate(Counters counters) {
+
+		long placed = world.blocksPlaced;
+		int offsetX = region++ * SPACING;
+		for (int x = offsetX; x < offsetX + REGION; x++) {
+			for (int z = 0; z < REGION; z++) {
+				/* seeded the same way as WorldHandler */
+				random.setFeatureSeed(FeatureRandom.getChunkSeed(SEED, x, z), template);
+				feature.generateFeature(random, x, z, world, false, true);
+			}
+		}
+		counters.blocksPlaced += world.blocksPlaced - placed;
+	}
+
+	/* HELPERS */
+	private static synchronized void initialize() throws IOException {
+
+		if (!initialized) {
+			CoreProps.configDir = Files.createTempDirectory("cofh-benchmark").toFile();
+			/* FeatureParser only creates the last level itself */
+			new File(CoreProps.configDir, "cofh/world").mkdirs();
+			FeatureParser.initialize();
+			initialized = true;
+		}
+	}
+
+	@State (Scope.Thread)
+	@AuxCounters (AuxCounters.Type.EVENTS)
+	public static class Counters {
+
+		public long blocksPlaced;
+
+		@Setup (Level.Iteration)
+		public void reset() {
+
+			blocksPlaced = 0;
+		}
+	}
+
+}
@@ -15,7 +15,9 @@ import cofh.core.util.crafting.RecipeShapelessOreFluid;
 import cofh.core.util.crafting.RecipeUpgrade;
 import cofh.core.util.crafting.RecipeUpgradeOverride;
 import cofh.core.util.oredict.OreDictionaryArbiter;
+import cofh.core.world.CascadeDetector;
 import cofh.core.world.FeatureParser;
+import cofh.core.world.WorldGenReloader;
 import cofh.core.world.WorldHandler;
 import net.minecraft.init.Blocks;
 import net.minecraft.init.Items;
@@ -132,6 +134,14 @@ public class CoFHCore {
 	public void serverStarting(FMLServerStartingEvent event) {
 
 		CommandHandler.initCommands(event);
+		WorldGenReloader.startWatching();
+	}
+
+	@EventHandler
+	public void serverStopped(FMLServerStoppedEvent event) {
+
+		WorldGenReloader.stopWatching();
+		CascadeDetector.logSummary();
 	}
 
 	@EventHandler
@@ -37,9 +37,11 @@ public class CommandHandler extends CommandBase {
 		registerSubCommand(CommandReplaceBlock.instance);
 		registerSubCommand(CommandUnloadChunk.instance);
 		registerSubCommand(CommandReloadWorldgen.instance);
+		registerSubCommand(CommandPregen.instance);
 		registerSubCommand(CommandCountBlock.instance);
 		registerSubCommand(CommandHand.instance);
 		registerSubCommand(CommandFriend.instance);
+		registerSubCommand(CommandWorldgen.instance);
 
 		if (!LoadingPlugin.obfuscated) { // in-dev commands
 		}
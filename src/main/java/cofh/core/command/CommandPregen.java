@@ -1,7 +1,9 @@
 package cofh.core.command;
 
+import cofh.core.world.PregenTask;
+import cofh.core.world.PregenThrottle;
+import cofh.core.world.RegionFileIndex;
 import cofh.core.world.TickHandlerWorld;
-import cofh.lib.util.ChunkCoord;
 import com.google.common.base.Throwables;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
@@ -11,9 +13,10 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.TextComponentTranslation;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 
-import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Locale;
 
 public class CommandPregen implements ISubCommand {
 
@@ -34,14 +37,48 @@ public class CommandPregen implements ISubCommand {
 	@Override
 	public void handleCommand(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
 
-		if (args.length < 4) {
-			sender.sendMessage(new TextComponentTranslation("chat.cofh.command.syntaxError"));
-			throw new WrongUsageException("chat.cofh.command." + getCommandName() + ".syntax");
-		}
 		World world = sender.getEntityWorld();
 		if (world.isRemote) {
 			return;
 		}
+		int dim = world.provider.getDimension();
+		if (args.length == 2) {
+			PregenTask task = TickHandlerWorld.getPreGenTask(dim);
+			switch (args[1].toLowerCase(Locale.US)) {
+				case "status":
+					if (task == null) {
+						throw new CommandException("chat.cofh.command.pregen.none");
+					}
+					long eta = task.getEta();
+					Object time = task.isPaused() ? new TextComponentTranslation("chat.cofh.command.pregen.status.paused") : eta < 0 ? new TextComponentTranslation("chat.cofh.command.pregen.status.unknown") : String.format("%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60);
+					sender.sendMessage(new TextComponentTranslation("chat.cofh.command.pregen.status", task.getDone(), task.getTotal(), String.format("%.1f", task.getDone() * 100D / task.getTotal()), task.getGenerated(), String.format("%.2f", task.getRate()), time));
+					if (!task.isPaused() && PregenThrottle.getState(dim) != PregenThrottle.State.NONE) {
+						sender.sendMessage(new TextComponentTranslation("chat.cofh.command.pregen.throttled", PregenThrottle.getReason(dim)));
+					}
+					return;
+				case "pause":
+				case "resume":
+					if (task == null) {
+						throw new CommandException("chat.cofh.command.pregen.none");
+					}
+					boolean pause = "pause".equals(args[1].toLowerCase(Locale.US));
+					task.setPaused(pause);
+					task.save();
+					CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.pregen." + (pause ? "pause" : "resume"), task.getDone(), task.getTotal());
+					return;
+				case "cancel":
+					task = TickHandlerWorld.cancelPreGen((WorldServer) world);
+					if (task == null) {
+						throw new CommandException("chat.cofh.command.pregen.none");
+					}
+					CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.pregen.cancel", task.getDone(), task.getTotal());
+					return;
+			}
+		}
+		if (args.length < 4) {
+			sender.sendMessage(new TextComponentTranslation("chat.cofh.command.syntaxError"));
+			throw new WrongUsageException("chat.cofh.command." + getCommandName() + ".syntax");
+		}
 
 		BlockPos center = null;
 		int i = 1;
@@ -92,27 +129,26 @@ public class CommandPregen implements ISubCommand {
 			zL = t;
 		}
 
-		synchronized (TickHandlerWorld.chunksToPreGen) {
-			ArrayDeque<ChunkCoord> chunks = TickHandlerWorld.chunksToPreGen.get(world.provider.getDimension());
-			if (chunks == null) {
-				chunks = new ArrayDeque<>();
-			}
-
-			for (int x = xS; x <= xL; ++x) {
-				for (int z = zS; z <= zL; ++z) {
-					chunks.addLast(new ChunkCoord(x, z));
-				}
-			}
-			TickHandlerWorld.chunksToPreGen.put(world.provider.getDimension(), chunks);
-			CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.pregen.start", (xL - xS) * (zL - zS), xS, zS, xL, zL);
+		PregenTask task = new PregenTask(dim, xS, zS, xL, zL);
+		if (TickHandlerWorld.getPreGenTask(dim) != null) {
+			throw new CommandException("chat.cofh.command.pregen.running");
+		}
+		long existing = new RegionFileIndex((WorldServer) world).count(xS, zS, xL, zL);
+		if (existing >= task.getTotal()) {
+			CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.pregen.complete", task.getTotal(), xS, zS, xL, zL);
+			return;
 		}
+		TickHandlerWorld.startPreGen(task);
+		CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.pregen.start", task.getTotal() - existing, xS, zS, xL, zL);
 	}
 
 	@Override
 	public List<String> addTabCompletionOptions(MinecraftServer server, ICommandSender sender, String[] args) {
 
 		if (args.length == 2) {
-			return CommandBase.getListOfStringsMatchingLastWord(args, server.getOnlinePlayerNames());
+			List<String> options = CommandBase.getListOfStringsMatchingLastWord(args, server.getOnlinePlayerNames());
+			options.addAll(CommandBase.getListOfStringsMatchingLastWord(args, "status", "pause", "resume", "cancel"));
+			return options;
 		}
 		return null;
 	}
@@ -1,9 +1,6 @@
 package cofh.core.command;
 
-import cofh.core.world.FeatureParser;
-import cofh.core.world.WorldHandler;
-import cofh.lib.world.IFeatureGenerator;
-import com.google.common.base.Throwables;
+import cofh.core.world.WorldGenReloader;
 import net.minecraft.command.CommandException;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.server.MinecraftServer;
@@ -29,17 +26,8 @@ public class CommandReloadWorldgen implements ISubCommand {
 	@Override
 	public void handleCommand(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
 
-		for (IFeatureGenerator g : FeatureParser.parsedFeatures) {
-			WorldHandler.instance.removeFeature(g);
-		}
-		FeatureParser.parsedFeatures.clear();
-
-		try {
-			FeatureParser.parseGenerationFiles();
-		} catch (Throwable t) {
-			Throwables.propagate(t);
-		}
-		CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.reloadworldgen.success");
+		WorldGenReloader.requestReload(sender);
+		CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.reloadworldgen.start");
 	}
 
 	@Override
@@ -1,6 +1,7 @@
 package cofh.core.command;
 
 import cofh.core.init.CoreProps;
+import cofh.core.util.helpers.TickTimeHelper;
 import com.google.common.base.Throwables;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
@@ -22,30 +23,14 @@ public class CommandTPS implements ISubCommand {
 
 	private static DecimalFormat floatfmt = new DecimalFormat("##0.00");
 
-	// private static final int MAX_TPS = 20;
-	// private static final int MIN_TICK_MS = 50;
-
-	private double getTickTimeSum(long[] times) {
-
-		long timesum = 0L;
-		if (times == null) {
-			return 0.0D;
-		}
-		for (long time : times) {
-			timesum += time;
-		}
-		return timesum / times.length;
-	}
-
 	private double getTickMs(World world) {
 
-		return getTickTimeSum(world == null ? CoreProps.server.tickTimeArray : (long[]) CoreProps.server.worldTickTimes.get(world.provider.getDimension())) * 1.0E-006D;
+		return TickTimeHelper.getTickMs(world);
 	}
 
 	private double getTps(World world) {
 
-		double tps = 1000.0D / getTickMs(world);
-		return tps > 20.0D ? 20.0D : tps;
+		return TickTimeHelper.getTps(world);
 	}
 
 	/* ISubCommand */
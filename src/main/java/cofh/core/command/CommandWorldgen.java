@@ -0,0 +1,165 @@
+package cofh.core.command;
+
+import cofh.CoFHCore;
+import cofh.core.init.CoreProps;
+import cofh.core.world.CascadeDetector;
+import cofh.core.world.GenScheduler;
+import cofh.core.world.TickHandlerWorld;
+import cofh.core.world.WorldGenProfiler;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.DimensionManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+public class CommandWorldgen implements ISubCommand {
+
+	public static ISubCommand instance = new CommandWorldgen();
+
+	private static DecimalFormat floatfmt = new DecimalFormat("##0.00");
+
+	@Override
+	public String getCommandName() {
+
+		return "worldgen";
+	}
+
+	@Override
+	public int getPermissionLevel() {
+
+		return 3;
+	}
+
+	@Override
+	public void handleCommand(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+
+		if (args.length < 2) {
+			sender.sendMessage(new TextComponentTranslation("chat.cofh.command.syntaxError"));
+			throw new WrongUsageException("chat.cofh.command." + getCommandName() + ".syntax");
+		}
+		switch (args[1].toLowerCase(Locale.US)) {
+			case "status":
+				handleStatus(sender);
+				break;
+			case "profile":
+				handleProfile(sender, args);
+				break;
+			case "cascade":
+				handleCascade(sender, args);
+				break;
+			default:
+				sender.sendMessage(new TextComponentTranslation("chat.cofh.command.syntaxError"));
+				throw new WrongUsageException("chat.cofh.command." + getCommandName() + ".syntax");
+		}
+	}
+
+	private void handleStatus(ICommandSender sender) {
+
+		String budget = floatfmt.format(GenScheduler.getBudget() * 1.0E-006D);
+		sender.sendMessage(new TextComponentTranslation(GenScheduler.isAdaptive() ? "chat.cofh.command.worldgen.status.budgetAdaptive" : "chat.cofh.command.worldgen.status.budget", budget));
+
+		for (WorldServer world : CoreProps.server.worlds) {
+			int dim = world.provider.getDimension();
+			GenScheduler.Stats stats = GenScheduler.getStats(dim);
+			sender.sendMessage(new TextComponentTranslation("chat.cofh.command.worldgen.status.dimension", world.provider.getDimensionType().getName(), dim, TickHandlerWorld.getRetroGenPendingSize(dim), TickHandlerWorld.getPreGenQueueSize(dim), floatfmt.format(stats.getThroughput()), stats.retro, stats.pregen));
+		}
+	}
+
+	private void handleProfile(ICommandSender sender, String[] args) throws CommandException {
+
+		String action = args.length < 3 ? "show" : args[2].toLowerCase(Locale.US);
+		switch (action) {
+			case "start":
+				WorldGenProfiler.start();
+				CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.worldgen.profile.start");
+				return;
+			case "stop":
+				WorldGenProfiler.stop();
+				CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.worldgen.profile.stop");
+				return;
+			case "reset":
+				WorldGenProfiler.reset();
+				CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.worldgen.profile.reset");
+				return;
+			case "csv":
+				File file = new File(DimensionManager.getCurrentSaveRootDirectory(), "cofh/worldgen/profile-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+				try {
+					WorldGenProfiler.writeCsv(file);
+				} catch (IOException e) {
+					CoFHCore.LOG.error("Could not write the world generation profile to " + file + ".", e);
+					throw new CommandException("chat.cofh.command.worldgen.profile.csvFailed", file.getName());
+				}
+				CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.worldgen.profile.csv", file.getPath());
+				return;
+			case "show":
+				int count = args.length > 3 ? CommandBase.parseInt(args[3], 1) : 10;
+				List<WorldGenProfiler.Entry> entries = WorldGenProfiler.getEntries(Integer.MIN_VALUE);
+				sender.sendMessage(new TextComponentTranslation(WorldGenProfiler.isEnabled() ? "chat.cofh.command.worldgen.profile.headerRunning" : "chat.cofh.command.worldgen.profile.header", floatfmt.format(WorldGenProfiler.getRunTime()), entries.size()));
+				for (int i = 0, e = Math.min(count, entries.size()); i < e; ++i) {
+					WorldGenProfiler.Entry entry = entries.get(i);
+					sender.sendMessage(new TextComponentTranslation("chat.cofh.command.worldgen.profile.entry", entry.dimension, entry.feature, floatfmt.format(entry.totalNanos * 1.0E-6D), entry.calls, entry.generated, floatfmt.format(entry.getAverage()), entry.getPercentile(0.99D), floatfmt.format(entry.maxNanos * 1.0E-3D)));
+				}
+				return;
+			default:
+				sender.sendMessage(new TextComponentTranslation("chat.cofh.command.syntaxError"));
+				throw new WrongUsageException("chat.cofh.command." + getCommandName() + ".syntax");
+		}
+	}
+
+	private void handleCascade(ICommandSender sender, String[] args) throws CommandException {
+
+		String action = args.length < 3 ? "show" : args[2].toLowerCase(Locale.US);
+		switch (action) {
+			case "start":
+				CascadeDetector.start();
+				CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.worldgen.cascade.start");
+				return;
+			case "stop":
+				CascadeDetector.stop();
+				CascadeDetector.logSummary();
+				CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.worldgen.cascade.stop");
+				return;
+			case "reset":
+				CascadeDetector.reset();
+				CommandHandler.logAdminCommand(sender, this, "chat.cofh.command.worldgen.cascade.reset");
+				return;
+			case "show":
+				int count = args.length > 3 ? CommandBase.parseInt(args[3], 1) : 10;
+				List<CascadeDetector.Entry> entries = CascadeDetector.getEntries();
+				sender.sendMessage(new TextComponentTranslation(CascadeDetector.isEnabled() ? "chat.cofh.command.worldgen.cascade.headerRunning" : "chat.cofh.command.worldgen.cascade.header", entries.size()));
+				for (int i = 0, e = Math.min(count, entries.size()); i < e; ++i) {
+					CascadeDetector.Entry entry = entries.get(i);
+					sender.sendMessage(new TextComponentTranslation("chat.cofh.command.worldgen.cascade.entry", entry.feature, entry.count, entry.generated, entry.maxDepth, String.join("; ", entry.samples)));
+				}
+				return;
+			default:
+				sender.sendMessage(new TextComponentTranslation("chat.cofh.command.syntaxError"));
+				throw new WrongUsageException("chat.cofh.command." + getCommandName() + ".syntax");
+		}
+	}
+
+	@Override
+	public List<String> addTabCompletionOptions(MinecraftServer server, ICommandSender sender, String[] args) {
+
+		if (args.length == 2) {
+			return CommandBase.getListOfStringsMatchingLastWord(args, "status", "profile", "cascade");
+		} else if (args.length == 3 && "profile".equalsIgnoreCase(args[1])) {
+			return CommandBase.getListOfStringsMatchingLastWord(args, "show", "start", "stop", "reset", "csv");
+		} else if (args.length == 3 && "cascade".equalsIgnoreCase(args[1])) {
+			return CommandBase.getListOfStringsMatchingLastWord(args, "show", "start", "stop", "reset");
+		}
+		return null;
+	}
+
+}
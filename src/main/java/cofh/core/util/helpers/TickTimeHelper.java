@@ -0,0 +1,44 @@
+package cofh.core.util.helpers;
+
+import cofh.core.init.CoreProps;
+import net.minecraft.world.World;
+
+/**
+ * Reads the server's rolling tick time samples. Passing a null world returns the values for the overall server tick.
+ */
+public class TickTimeHelper {
+
+	public static final int MAX_TPS = 20;
+	public static final double MIN_TICK_MS = 1000.0D / MAX_TPS;
+
+	private TickTimeHelper() {
+
+	}
+
+	public static double getTickTimeSum(long[] times) {
+
+		long timesum = 0L;
+		if (times == null) {
+			return 0.0D;
+		}
+		for (long time : times) {
+			timesum += time;
+		}
+		return timesum / times.length;
+	}
+
+	public static double getTickMs(World world) {
+
+		if (CoreProps.server == null) {
+			return 0.0D;
+		}
+		return getTickTimeSum(world == null ? CoreProps.server.tickTimeArray : (long[]) CoreProps.server.worldTickTimes.get(world.provider.getDimension())) * 1.0E-006D;
+	}
+
+	public static double getTps(World world) {
+
+		double tps = 1000.0D / getTickMs(world);
+		return tps > MAX_TPS ? MAX_TPS : tps;
+	}
+
+}
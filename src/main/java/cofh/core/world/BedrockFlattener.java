@@ -0,0 +1,168 @@
+package cofh.core.world;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.network.play.server.SPacketChunkData;
+import net.minecraft.server.management.PlayerChunkMapEntry;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+/**
+ * Flattens the bedrock of a chunk by editing its bottom and top {@link ExtendedBlockStorage} sections directly.
+ *
+ * This skips the per-block world lookups, neighbor notifications and light checks of {@link World#setBlockState}; the chunk is relit, marked dirty and
+ * resent to watching players once. Only the columns of the chunk itself are flattened, not the populate area offset by 8 blocks.
+ */
+public class BedrockFlattener {
+
+	private static final IBlockState BEDROCK = Blocks.BEDROCK.getDefaultState();
+
+	private static final int FLOOR_HEIGHT = 5;
+	private static final int CEILING_DEPTH = 6;
+
+	private BedrockFlattener() {
+
+	}
+
+	public static boolean flatten(World world, Chunk chunk, int layers) {
+
+		ExtendedBlockStorage[] storage = chunk.getBlockStorageArray();
+		ExtendedBlockStorage bottom = storage[0];
+
+		/* Determine if this is a void age; halt if so. */
+		if (bottom == Chunk.NULL_BLOCK_STORAGE || isVoidAge(bottom)) {
+			return false;
+		}
+		IBlockState filler = getFiller(world, chunk);
+		int sections = 0;
+
+		for (int y = FLOOR_HEIGHT; y > layers - 1; y--) {
+			sections |= replaceLayer(bottom, y, filler, true) ? 1 : 0;
+		}
+		for (int y = layers - 1; y > 0; y--) {
+			sections |= replaceLayer(bottom, y, BEDROCK, false) ? 1 : 0;
+		}
+		/* Flatten bedrock on the top as well */
+		int worldHeight = world.getActualHeight();
+		ExtendedBlockStorage top = getStorage(chunk, worldHeight - 1, world, false);
+
+		if (top != Chunk.NULL_BLOCK_STORAGE && isBedrock(top.get(0, (worldHeight - 1) & 15, 0))) {
+			for (int y = worldHeight - 2; y > worldHeight - CEILING_DEPTH; y--) {
+				ExtendedBlockStorage section = getStorage(chunk, y, world, false);
+				if (section != Chunk.NULL_BLOCK_STORAGE && replaceLayer(section, y & 15, filler, true)) {
+					sections |= 1 << (y >> 4);
+				}
+			}
+			for (int y = worldHeight - layers; y < worldHeight - 1; y++) {
+				if (replaceLayer(getStorage(chunk, y, world, true), y & 15, BEDROCK, false)) {
+					sections |= 1 << (y >> 4);
+				}
+			}
+		}
+		if (sections != 0) {
+			relight(world, chunk);
+			chunk.setChunkModified();
+			resend(world, chunk, sections);
+		}
+		return sections != 0;
+	}
+
+	public static IBlockState getFiller(World world, Chunk chunk) {
+
+		switch (world.provider.getDimension()) {
+			case -1:
+			/* This is a hack because Mojang coded the Nether wrong. Are you surprised? */
+				return Blocks.NETHERRACK.getDefaultState();
+			case 0:
+			/*
+			 * Overworld gets replaced with stone; the biome filler block is dirt by default, the actual filler block is part of a method body.
+			 */
+				return Blocks.STONE.getDefaultState();
+			case 1:
+			/* This is a hack because Mojang coded The End wrong. Are you surprised? */
+				return Blocks.END_STONE.getDefaultState();
+			default:
+			/* Other dimensions are on their own for helping us with the filler block. */
+				return world.getBiome(new BlockPos(chunk.xPosition << 4, 0, chunk.zPosition << 4)).fillerBlock;
+		}
+	}
+
+	/* HELPERS */
+	private static boolean isVoidAge(ExtendedBlockStorage bottom) {
+
+		for (int i = 0; i < 16; i += 4) {
+			if (!isBedrock(bottom.get(i, 0, i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isBedrock(IBlockState state) {
+
+		return state.getBlock().isAssociatedBlock(Blocks.BEDROCK);
+	}
+
+	/**
+	 * Sets every block of a 16x16 layer to the given state; if onlyBedrock is set, only bedrock is replaced, otherwise only non-bedrock is.
+	 */
+	private static boolean replaceLayer(ExtendedBlockStorage section, int y, IBlockState state, boolean onlyBedrock) {
+
+		boolean changed = false;
+		for (int x = 0; x < 16; x++) {
+			for (int z = 0; z < 16; z++) {
+				if (isBedrock(section.get(x, y, z)) == onlyBedrock) {
+					section.set(x, y, z, state);
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	private static ExtendedBlockStorage getStorage(Chunk chunk, int y, World world, boolean create) {
+
+		ExtendedBlockStorage[] storage = chunk.getBlockStorageArray();
+		ExtendedBlockStorage section = storage[y >> 4];
+		if (section == Chunk.NULL_BLOCK_STORAGE && create) {
+			section = storage[y >> 4] = new ExtendedBlockStorage(y & ~15, world.provider.hasSkyLight());
+		}
+		return section;
+	}
+
+	/**
+	 * Brings a chunk whose storage was written directly up to date: its height and precipitation maps, which Chunk.setBlockState would have kept, and its light.
+	 */
+	static void relight(World world, Chunk chunk) {
+
+		/* also recomputes the height map and clears the precipitation map, with or without sky light */
+		chunk.generateSkylightMap();
+		if (chunk.isLightPopulated()) {
+			/* otherwise light has not been calculated yet (new generation); it will be done for the whole chunk later */
+			chunk.resetRelightChecks();
+		}
+	}
+
+	/**
+	 * Sends the changed sections of a chunk (a bitmask, bit n for blocks n * 16 to n * 16 + 15) to the players watching it.
+	 */
+	static void resend(World world, Chunk chunk, int sections) {
+
+		if (!(world instanceof WorldServer)) {
+			return;
+		}
+		if (world.provider.hasSkyLight()) {
+			/* sky light is recomputed from the top down, so it may have changed in every section below the highest changed one */
+			sections |= Integer.highestOneBit(sections) - 1;
+		}
+		PlayerChunkMapEntry watcher = ((WorldServer) world).getPlayerChunkMap().getEntry(chunk.xPosition, chunk.zPosition);
+		if (watcher != null) {
+			/* a mask below 65535 makes a partial update: only those sections, no biomes */
+			watcher.sendPacket(new SPacketChunkData(chunk, sections & 0xFFFF));
+		}
+	}
+
+}
@@ -0,0 +1,470 @@
+package cofh.core.world;
+
+import cofh.asmhooks.world.WorldServerProxy;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.init.Blocks;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.EnumSkyBlock;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.EmptyChunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+/**
+ * The world as seen by features while a chunk populates or is retrogenerated.
+ *
+ * If writes are deferred, the block, height, light and chunk queries of this view do not make chunks that are not loaded load or generate. Writes to such
+ * blocks go to {@link DeferredWrites}, and reads see those writes. A block that has not been written is assumed to be the same as the block at the same
+ * height at the nearest position in the 2x2 chunk window of the populating chunk, which is always loaded; height, light and sky queries are answered the same
+ * way, and so is a chunk that is not loaded, which reads and writes as the view does. A deferred write is only applied if the assumption turns out to hold,
+ * so a feature that continues into ground it expected keeps its shape. Tile entities and entities placed in such chunks are dropped, and writes next to one
+ * do not notify their neighbors. isBlockLoaded and isAreaLoaded report what is actually loaded, so features that check them before reaching out stay within
+ * loaded chunks. Other world methods, and blocks that look around when they are placed, still go to the world, and may load chunks.
+ *
+ * If updates are batched (for RetroGen), blocks in loaded chunks are written straight into chunk storage, without light checks or neighbor and client
+ * notifications; {@link #finish()} then updates the height maps and light of every changed chunk once, as {@link BedrockFlattener} does, and resends its
+ * changed sections to watching players once. Blocks with tile entities are still set through the world.
+ *
+ * Biomes and surface heights in the generating chunk are answered from its {@link GenContext}.
+ */
+public class BoundedWorld extends WorldServerProxy {
+
+	private static TIntObjectHashMap<BoundedWorld> views = new TIntObjectHashMap<>();
+
+	private DeferredWrites writes;
+	private GenContext context;
+	private boolean defer;
+	private boolean batch;
+	private int minX, minZ, maxX, maxZ;
+	private long lastChunk = Long.MIN_VALUE;
+	private boolean lastLoaded;
+	private final MutableBlockPos nearestPos = new MutableBlockPos();
+
+	private final TLongObjectHashMap<Chunk> changedChunks = new TLongObjectHashMap<>();
+	/* the sections changed in each chunk, bit n for blocks n * 16 to n * 16 + 15 */
+	private final TLongIntHashMap changedSections = new TLongIntHashMap();
+	private final TLongHashSet relightChunks = new TLongHashSet();
+
+	private BoundedWorld(WorldServer world) {
+
+		super(world);
+	}
+
+	/**
+	 * @param defer Defer writes into chunks that are not loaded.
+	 * @param batch Batch light and client updates until {@link #finish()}.
+	 * @return The view to generate a chunk through, or null if it is not a server world.
+	 */
+	public static BoundedWorld get(World world, GenContext context, boolean defer, boolean batch) {
+
+		if (!(world instanceof WorldServer) || world instanceof BoundedWorld) {
+			return null;
+		}
+		int dim = world.provider.getDimension();
+		BoundedWorld view = views.get(dim);
+		if (view == null || view.proxiedWorld != world) {
+			views.put(dim, view = new BoundedWorld((WorldServer) world));
+		}
+		view.begin(context, defer, batch);
+		return view;
+	}
+
+	public static void unload(int dim) {
+
+		views.remove(dim);
+	}
+
+	/**
+	 * Relights and resends the chunks changed by batched writes.
+	 */
+	public void finish() {
+
+		if (changedChunks.isEmpty()) {
+			return;
+		}
+		for (TLongObjectIterator<Chunk> i = changedChunks.iterator(); i.hasNext(); ) {
+			i.advance();
+			Chunk chunk = i.value();
+			if (relightChunks.contains(i.key())) {
+				BedrockFlattener.relight(proxiedWorld, chunk);
+			}
+			chunk.setChunkModified();
+			BedrockFlattener.resend(proxiedWorld, chunk, changedSections.get(i.key()));
+		}
+		changedChunks.clear();
+		changedSections.clear();
+		relightChunks.clear();
+	}
+
+	/* World */
+	@Override
+	public IBlockState getBlockState(BlockPos pos) {
+
+		if (isLoaded(pos)) {
+			return proxiedWorld.getBlockState(pos);
+		}
+		IBlockState state = writes.get(pos);
+		return state != null ? state : proxiedWorld.getBlockState(nearest(pos));
+	}
+
+	@Override
+	public boolean setBlockState(BlockPos pos, IBlockState state, int flags) {
+
+		if (!isLoaded(pos)) {
+			if (pos.getY() < 0 || pos.getY() >= 256) {
+				return false;
+			}
+			writes.add(pos, state, proxiedWorld.getBlockState(nearest(pos)));
+			return true;
+		}
+		context.invalidate(pos.getX(), pos.getZ());
+		if (!batch) {
+			return proxiedWorld.setBlockState(pos, state, edgeFlags(pos, flags));
+		}
+		if (pos.getY() < 0 || pos.getY() >= 256) {
+			return false;
+		}
+		Chunk chunk = proxiedWorld.getChunkFromBlockCoords(pos);
+		IBlockState old = chunk.getBlockState(pos);
+		if (old == state) {
+			return false;
+		}
+		int y = pos.getY();
+		if (old.getBlock().hasTileEntity(old) || state.getBlock().hasTileEntity(state)) {
+			/* the world keeps the height maps and light; only the client update is batched */
+			changed(chunk, y, false);
+			return proxiedWorld.setBlockState(pos, state, flags & ~3);
+		}
+		ExtendedBlockStorage[] storage = chunk.getBlockStorageArray();
+		ExtendedBlockStorage section = storage[y >> 4];
+		if (section == Chunk.NULL_BLOCK_STORAGE) {
+			section = storage[y >> 4] = new ExtendedBlockStorage(y & ~15, proxiedWorld.provider.hasSkyLight());
+		}
+		section.set(pos.getX() & 15, y & 15, pos.getZ() & 15, state);
+		/* any block may change the height or precipitation maps, which only Chunk.setBlockState keeps */
+		changed(chunk, y, true);
+		return true;
+	}
+
+	@Override
+	public boolean setBlockState(BlockPos pos, IBlockState state) {
+
+		return setBlockState(pos, state, 3);
+	}
+
+	@Override
+	public boolean setBlockToAir(BlockPos pos) {
+
+		return setBlockState(pos, Blocks.AIR.getDefaultState(), 3);
+	}
+
+	@Override
+	public boolean isAirBlock(BlockPos pos) {
+
+		IBlockState state = getBlockState(pos);
+		return state.getBlock().isAir(state, this, pos);
+	}
+
+	@Override
+	public TileEntity getTileEntity(BlockPos pos) {
+
+		return isLoaded(pos) ? proxiedWorld.getTileEntity(pos) : null;
+	}
+
+	@Override
+	public void setTileEntity(BlockPos pos, TileEntity tile) {
+
+		if (isLoaded(pos)) {
+			proxiedWorld.setTileEntity(pos, tile);
+		}
+	}
+
+	@Override
+	public boolean spawnEntity(Entity entity) {
+
+		return isLoaded(new BlockPos(entity)) && proxiedWorld.spawnEntity(entity);
+	}
+
+	@Override
+	public Chunk getChunkFromChunkCoords(int chunkX, int chunkZ) {
+
+		if (!isLoaded(chunkX << 4, chunkZ << 4)) {
+			return new UnloadedChunk(chunkX, chunkZ);
+		}
+		return proxiedWorld.getChunkFromChunkCoords(chunkX, chunkZ);
+	}
+
+	@Override
+	public Chunk getChunkFromBlockCoords(BlockPos pos) {
+
+		return getChunkFromChunkCoords(pos.getX() >> 4, pos.getZ() >> 4);
+	}
+
+	@Override
+	public BlockPos getHeight(BlockPos pos) {
+
+		return isLoaded(pos) ? proxiedWorld.getHeight(pos) : atColumn(pos, proxiedWorld.getHeight(nearest(pos)));
+	}
+
+	@Override
+	public int getHeight(int x, int z) {
+
+		return isLoaded(x, z) ? proxiedWorld.getHeight(x, z) : proxiedWorld.getHeight(nearestX(x), nearestZ(z));
+	}
+
+	@Override
+	public int getChunksLowestHorizon(int x, int z) {
+
+		return isLoaded(x, z) ? proxiedWorld.getChunksLowestHorizon(x, z) : proxiedWorld.getChunksLowestHorizon(nearestX(x), nearestZ(z));
+	}
+
+	@Override
+	public boolean canSeeSky(BlockPos pos) {
+
+		return proxiedWorld.canSeeSky(isLoaded(pos) ? pos : nearest(pos));
+	}
+
+	@Override
+	public boolean canBlockSeeSky(BlockPos pos) {
+
+		return proxiedWorld.canBlockSeeSky(isLoaded(pos) ? pos : nearest(pos));
+	}
+
+	@Override
+	public int getLight(BlockPos pos) {
+
+		return proxiedWorld.getLight(isLoaded(pos) ? pos : nearest(pos));
+	}
+
+	@Override
+	public int getLight(BlockPos pos, boolean checkNeighbors) {
+
+		return proxiedWorld.getLight(isLoaded(pos) ? pos : nearest(pos), checkNeighbors);
+	}
+
+	@Override
+	public int getLightFromNeighbors(BlockPos pos) {
+
+		return proxiedWorld.getLightFromNeighbors(isLoaded(pos) ? pos : nearest(pos));
+	}
+
+	@Override
+	public int getLightFor(EnumSkyBlock type, BlockPos pos) {
+
+		return proxiedWorld.getLightFor(type, isLoaded(pos) ? pos : nearest(pos));
+	}
+
+	@Override
+	public int getLightFromNeighborsFor(EnumSkyBlock type, BlockPos pos) {
+
+		return proxiedWorld.getLightFromNeighborsFor(type, isLoaded(pos) ? pos : nearest(pos));
+	}
+
+	@Override
+	public void setLightFor(EnumSkyBlock type, BlockPos pos, int lightValue) {
+
+		if (isLoaded(pos)) {
+			proxiedWorld.setLightFor(type, pos, lightValue);
+		}
+	}
+
+	@Override
+	public Biome getBiome(BlockPos pos) {
+
+		return context.contains(pos.getX(), pos.getZ()) ? context.getBiome(pos.getX(), pos.getZ()) : proxiedWorld.getBiome(pos);
+	}
+
+	@Override
+	public BlockPos getTopSolidOrLiquidBlock(BlockPos pos) {
+
+		if (context.contains(pos.getX(), pos.getZ())) {
+			return atColumn(pos, context.getSurfaceHeight(pos.getX(), pos.getZ()));
+		}
+		return isLoaded(pos) ? proxiedWorld.getTopSolidOrLiquidBlock(pos) : atColumn(pos, proxiedWorld.getTopSolidOrLiquidBlock(nearest(pos)));
+	}
+
+	@Override
+	public BlockPos getPrecipitationHeight(BlockPos pos) {
+
+		if (context.contains(pos.getX(), pos.getZ())) {
+			return atColumn(pos, context.getFluidHeight(pos.getX(), pos.getZ()));
+		}
+		return isLoaded(pos) ? proxiedWorld.getPrecipitationHeight(pos) : atColumn(pos, proxiedWorld.getPrecipitationHeight(nearest(pos)));
+	}
+
+	/* HELPERS */
+	private void begin(GenContext context, boolean defer, boolean batch) {
+
+		cofh_updateProps();
+		this.context = context;
+		this.defer = defer;
+		this.batch = batch;
+		writes = DeferredWrites.get(provider.getDimension());
+		minX = context.chunkX << 4;
+		minZ = context.chunkZ << 4;
+		maxX = minX + 31;
+		maxZ = minZ + 31;
+		lastChunk = Long.MIN_VALUE;
+	}
+
+	private boolean isLoaded(BlockPos pos) {
+
+		return isLoaded(pos.getX(), pos.getZ());
+	}
+
+	private boolean isLoaded(int x, int z) {
+
+		if (!defer) {
+			return true;
+		}
+		if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+			return true;
+		}
+		long key = GenJournal.pack(x >> 4, z >> 4);
+		if (key != lastChunk) {
+			lastChunk = key;
+			lastLoaded = proxiedWorld.getChunkProvider().getLoadedChunk(x >> 4, z >> 4) != null;
+		}
+		return lastLoaded;
+	}
+
+	/**
+	 * Neighbor and observer updates look at the blocks around the written one, so they are dropped for writes next to a chunk that is not loaded.
+	 */
+	private int edgeFlags(BlockPos pos, int flags) {
+
+		int x = pos.getX(), z = pos.getZ();
+		if (!defer || x > minX && x < maxX && z > minZ && z < maxZ) {
+			return flags;
+		}
+		if (isLoaded(x - 1, z) && isLoaded(x + 1, z) && isLoaded(x, z - 1) && isLoaded(x, z + 1)) {
+			return flags;
+		}
+		return flags & ~1 | 16;
+	}
+
+	private void changed(Chunk chunk, int y, boolean relight) {
+
+		long key = GenJournal.pack(chunk.xPosition, chunk.zPosition);
+		changedChunks.put(key, chunk);
+		changedSections.put(key, changedSections.get(key) | 1 << (y >> 4));
+		if (relight) {
+			relightChunks.add(key);
+		}
+	}
+
+	private BlockPos nearest(BlockPos pos) {
+
+		/* only ever passed straight to the proxied world, which does not keep it */
+		return nearestPos.setPos(nearestX(pos.getX()), pos.getY(), nearestZ(pos.getZ()));
+	}
+
+	private int nearestX(int x) {
+
+		return Math.max(minX, Math.min(maxX, x));
+	}
+
+	private int nearestZ(int z) {
+
+		return Math.max(minZ, Math.min(maxZ, z));
+	}
+
+	private static BlockPos atColumn(BlockPos pos, BlockPos height) {
+
+		return atColumn(pos, height.getY());
+	}
+
+	private static BlockPos atColumn(BlockPos pos, int y) {
+
+		/* returned to the feature, which may keep it, so it must not be shared */
+		if (y == pos.getY() && !(pos instanceof MutableBlockPos)) {
+			return pos;
+		}
+		return new BlockPos(pos.getX(), y, pos.getZ());
+	}
+
+	/**
+	 * A chunk that is not loaded, as seen through the view: its blocks, heights and light are read through the view, and writes to it are deferred.
+	 */
+	private class UnloadedChunk extends EmptyChunk {
+
+		UnloadedChunk(int chunkX, int chunkZ) {
+
+			super(proxiedWorld, chunkX, chunkZ);
+		}
+
+		@Override
+		public IBlockState getBlockState(BlockPos pos) {
+
+			return BoundedWorld.this.getBlockState(inChunk(pos));
+		}
+
+		@Override
+		public IBlockState getBlockState(int x, int y, int z) {
+
+			return BoundedWorld.this.getBlockState(inChunk(x, y, z));
+		}
+
+		@Override
+		public IBlockState setBlockState(BlockPos pos, IBlockState state) {
+
+			pos = inChunk(pos);
+			IBlockState old = BoundedWorld.this.getBlockState(pos);
+			BoundedWorld.this.setBlockState(pos, state, 2);
+			return old;
+		}
+
+		@Override
+		public int getHeightValue(int x, int z) {
+
+			return BoundedWorld.this.getHeight((xPosition << 4) + (x & 15), (zPosition << 4) + (z & 15));
+		}
+
+		@Override
+		public BlockPos getPrecipitationHeight(BlockPos pos) {
+
+			return BoundedWorld.this.getPrecipitationHeight(inChunk(pos));
+		}
+
+		@Override
+		public int getLightFor(EnumSkyBlock type, BlockPos pos) {
+
+			return BoundedWorld.this.getLightFor(type, inChunk(pos));
+		}
+
+		@Override
+		public int getLightSubtracted(BlockPos pos, int amount) {
+
+			BlockPos near = nearest(inChunk(pos));
+			return proxiedWorld.getChunkFromBlockCoords(near).getLightSubtracted(near, amount);
+		}
+
+		@Override
+		public boolean canSeeSky(BlockPos pos) {
+
+			return BoundedWorld.this.canSeeSky(inChunk(pos));
+		}
+
+		/* chunk methods may be passed world or chunk-local positions */
+		private BlockPos inChunk(BlockPos pos) {
+
+			return inChunk(pos.getX(), pos.getY(), pos.getZ());
+		}
+
+		private BlockPos inChunk(int x, int y, int z) {
+
+			return new BlockPos((xPosition << 4) + (x & 15), y, (zPosition << 4) + (z & 15));
+		}
+	}
+
+}
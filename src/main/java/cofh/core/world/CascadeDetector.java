@@ -0,0 +1,172 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import gnu.trove.map.hash.THashMap;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Detects features that load or generate chunks outside of their population window, which makes world generation cascade.
+ *
+ * A feature populating chunk x, z may write to chunks x..x+1, z..z+1 only. While enabled, {@link WorldHandler} reports every feature it runs, and any chunk
+ * loaded by the server thread outside the innermost feature's window is recorded against that feature, with how deeply feature generation was nested at the
+ * time. While disabled (the default) the only cost to world generation is a check of {@link #enabled}.
+ */
+public class CascadeDetector {
+
+	public static final CascadeDetector instance = new CascadeDetector();
+	public static final int SAMPLES = 5;
+
+	static boolean enabled = false;
+
+	private static Thread owner;
+	private static int depth;
+	private static String[] features = new String[8];
+	private static int[] dimensions = new int[8];
+	private static int[] chunkXs = new int[8];
+	private static int[] chunkZs = new int[8];
+
+	private static THashMap<String, Entry> entries = new THashMap<>();
+
+	private CascadeDetector() {
+
+	}
+
+	public static void initialize() {
+
+		String comment = "If TRUE, features that make world generation cascade into neighboring chunks are logged. Use /cofh worldgen cascade for details.";
+		enabled = CoFHCore.CONFIG_CORE.getConfiguration().getBoolean("DetectCascadingGeneration", "World", enabled, comment);
+	}
+
+	public static void start() {
+
+		enabled = true;
+	}
+
+	public static void stop() {
+
+		enabled = false;
+		depth = 0;
+	}
+
+	public static void reset() {
+
+		entries.clear();
+	}
+
+	public static boolean isEnabled() {
+
+		return enabled;
+	}
+
+	static void enter(String feature, int dim, int chunkX, int chunkZ) {
+
+		if (depth == 0) {
+			owner = Thread.currentThread();
+		}
+		if (depth == features.length) {
+			int size = depth * 2;
+			features = Arrays.copyOf(features, size);
+			dimensions = Arrays.copyOf(dimensions, size);
+			chunkXs = Arrays.copyOf(chunkXs, size);
+			chunkZs = Arrays.copyOf(chunkZs, size);
+		}
+		features[depth] = feature;
+		dimensions[depth] = dim;
+		chunkXs[depth] = chunkX;
+		chunkZs[depth] = chunkZ;
+		++depth;
+	}
+
+	static void exit() {
+
+		if (depth > 0) {
+			features[--depth] = null;
+		}
+	}
+
+	/**
+	 * @return The entries, most cascades first.
+	 */
+	public static List<Entry> getEntries() {
+
+		List<Entry> list = new ArrayList<>(entries.values());
+		list.sort((a, b) -> Long.compare(b.count, a.count));
+		return list;
+	}
+
+	public static void logSummary() {
+
+		if (entries.isEmpty()) {
+			return;
+		}
+		CoFHCore.LOG.warn("Features that caused cascading world generation:");
+		for (Entry entry : getEntries()) {
+			CoFHCore.LOG.warn("  " + entry);
+		}
+	}
+
+	@SubscribeEvent
+	public void chunkLoad(ChunkEvent.Load event) {
+
+		if (depth == 0 || !enabled || Thread.currentThread() != owner || event.getWorld().isRemote) {
+			return;
+		}
+		int i = depth - 1;
+		Chunk chunk = event.getChunk();
+		int dim = event.getWorld().provider.getDimension();
+		int x = chunk.xPosition, z = chunk.zPosition;
+		if (dim == dimensions[i] && x >= chunkXs[i] && x <= chunkXs[i] + 1 && z >= chunkZs[i] && z <= chunkZs[i] + 1) {
+			return;
+		}
+		String feature = features[i];
+		Entry entry = entries.get(feature);
+		if (entry == null) {
+			entries.put(feature, entry = new Entry(feature));
+		}
+		/* a chunk that has just been generated is loaded before it is populated */
+		boolean generated = !chunk.isTerrainPopulated();
+		if (entry.count == 0) {
+			CoFHCore.LOG.warn(String.format("Feature '%s' %s chunk %d, %d in dimension %d while populating %d, %d (depth %d); world generation is cascading. Further occurrences are counted by /cofh worldgen cascade.", feature, generated ? "generated" : "loaded", x, z, dim, chunkXs[i], chunkZs[i], depth));
+		}
+		entry.record(dim, x, z, chunkXs[i], chunkZs[i], depth, generated);
+	}
+
+	public static class Entry {
+
+		public final String feature;
+		public long count;
+		public long generated;
+		public int maxDepth;
+		public final List<String> samples = new ArrayList<>(SAMPLES);
+
+		Entry(String feature) {
+
+			this.feature = feature;
+		}
+
+		void record(int dim, int x, int z, int fromX, int fromZ, int depth, boolean generated) {
+
+			++count;
+			if (generated) {
+				++this.generated;
+			}
+			maxDepth = Math.max(maxDepth, depth);
+			if (samples.size() < SAMPLES) {
+				samples.add("[" + dim + "] " + x + ", " + z + " from " + fromX + ", " + fromZ + " at depth " + depth);
+			}
+		}
+
+		@Override
+		public String toString() {
+
+			return feature + ": " + count + " chunks (" + generated + " generated), max depth " + maxDepth + ", e.g. " + String.join("; ", samples);
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package cofh.core.world;
+
+import gnu.trove.procedure.TLongProcedure;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing map from packed chunk coordinates (see {@link GenJournal#pack}) to int values, without boxing or an object per entry.
+ *
+ * Keys are scrambled before probing. Packed coordinates hash poorly as they are: trove hashes a long by xoring its halves, which puts every chunk on a diagonal
+ * in the same bucket. Collisions are resolved by linear probing, and removal shifts the following entries back, so there are no tombstones. A missing key
+ * reads as 0. Not thread safe.
+ */
+public class ChunkKeyMap {
+
+	/* z = Integer.MIN_VALUE is far outside the world border, so this is never a chunk */
+	private static final long FREE = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	public ChunkKeyMap() {
+
+		this(16);
+	}
+
+	public ChunkKeyMap(int expected) {
+
+		int capacity = Integer.highestOneBit(Math.max(expected, 4) * 2 - 1) << 1;
+		allocate(capacity);
+	}
+
+	public static long scramble(long key) {
+
+		key = (key ^ key >>> 33) * 0xFF51AFD7ED558CCDL;
+		key = (key ^ key >>> 33) * 0xC4CEB9FE1A85EC53L;
+		return key ^ key >>> 33;
+	}
+
+	public int get(long key) {
+
+		int i = find(key);
+		return i < 0 ? 0 : values[i];
+	}
+
+	public boolean containsKey(long key) {
+
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return The previous value, or 0 if there was none.
+	 */
+	public int put(long key, int value) {
+
+		if (key == FREE) {
+			throw new IllegalArgumentException("Not a chunk: " + key);
+		}
+		int i = slot(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				int old = values[i];
+				values[i] = value;
+				return old;
+			}
+			i = i + 1 & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > mask >> 1) {
+			rehash(keys.length << 1);
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The removed value, or 0 if there was none.
+	 */
+	public int remove(long key) {
+
+		int i = find(key);
+		if (i < 0) {
+			return 0;
+		}
+		int old = values[i];
+		/* shift back every following entry of the run that would no longer be reachable from its home slot */
+		for (int j = i + 1 & mask; keys[j] != FREE; j = j + 1 & mask) {
+			int home = slot(keys[j]);
+			if (i <= j ? i < home && home <= j : i < home || home <= j) {
+				continue;
+			}
+			keys[i] = keys[j];
+			values[i] = values[j];
+			i = j;
+		}
+		keys[i] = FREE;
+		--size;
+		return old;
+	}
+
+	public int size() {
+
+		return size;
+	}
+
+	public boolean isEmpty() {
+
+		return size == 0;
+	}
+
+	public void clear() {
+
+		Arrays.fill(keys, FREE);
+		size = 0;
+	}
+
+	public boolean forEachKey(TLongProcedure procedure) {
+
+		for (long key : keys) {
+			if (key != FREE && !procedure.execute(key)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* HELPERS */
+	private int slot(long key) {
+
+		return (int) scramble(key) & mask;
+	}
+
+	private int find(long key) {
+
+		for (int i = slot(key); keys[i] != FREE; i = i + 1 & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void allocate(int capacity) {
+
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+	}
+
+	private void rehash(int capacity) {
+
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] != FREE) {
+				int j = slot(oldKeys[i]);
+				while (keys[j] != FREE) {
+					j = j + 1 & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+}
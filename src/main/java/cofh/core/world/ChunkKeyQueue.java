@@ -0,0 +1,70 @@
+package cofh.core.world;
+
+import gnu.trove.procedure.TLongProcedure;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A FIFO queue of packed chunk coordinates (see {@link GenJournal#pack}) in a growable ring buffer, without boxing. Not thread safe.
+ */
+public class ChunkKeyQueue {
+
+	private long[] elements;
+	private int head;
+	private int size;
+
+	public ChunkKeyQueue() {
+
+		this(16);
+	}
+
+	public ChunkKeyQueue(int expected) {
+
+		elements = new long[Integer.highestOneBit(Math.max(expected, 2) * 2 - 1)];
+	}
+
+	public void add(long key) {
+
+		if (size == elements.length) {
+			long[] grown = new long[size << 1];
+			int tail = size - head;
+			System.arraycopy(elements, head, grown, 0, tail);
+			System.arraycopy(elements, 0, grown, tail, head);
+			elements = grown;
+			head = 0;
+		}
+		elements[head + size++ & elements.length - 1] = key;
+	}
+
+	public long poll() {
+
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		long key = elements[head];
+		head = head + 1 & elements.length - 1;
+		--size;
+		return key;
+	}
+
+	public int size() {
+
+		return size;
+	}
+
+	public boolean isEmpty() {
+
+		return size == 0;
+	}
+
+	public boolean forEach(TLongProcedure procedure) {
+
+		for (int i = 0; i < size; ++i) {
+			if (!procedure.execute(elements[head + i & elements.length - 1])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
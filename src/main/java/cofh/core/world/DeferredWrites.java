@@ -0,0 +1,256 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.iterator.TShortIntIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TShortIntHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.common.DimensionManager;
+import net.minecraftforge.common.util.Constants;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Block writes that features made into chunks that were not loaded at the time, kept per dimension until those chunks are populated or loaded again.
+ *
+ * Every write remembers the state the feature was assumed to replace (see {@link BoundedWorld}), and is only applied if the block still has that state. The
+ * writes of a dimension are kept in cofh/worldgen/DIM<id>.deferred, next to the dimension's other generation records.
+ */
+public class DeferredWrites {
+
+	private static TIntObjectHashMap<DeferredWrites> dimensions = new TIntObjectHashMap<>();
+
+	public final int dimension;
+	private final TLongObjectHashMap<PendingChunk> chunks = new TLongObjectHashMap<>();
+	/* chunks with writes that were loaded already populated; applied on the next world tick */
+	private final TLongArrayList ready = new TLongArrayList();
+	private boolean dirty;
+
+	private DeferredWrites(int dimension) {
+
+		this.dimension = dimension;
+	}
+
+	public static DeferredWrites get(int dim) {
+
+		DeferredWrites writes = dimensions.get(dim);
+		if (writes == null) {
+			dimensions.put(dim, writes = new DeferredWrites(dim));
+		}
+		return writes;
+	}
+
+	public static File getFile(int dim) {
+
+		return new File(DimensionManager.getCurrentSaveRootDirectory(), "cofh/worldgen/DIM" + dim + ".deferred");
+	}
+
+	public static void load(int dim) {
+
+		DeferredWrites writes = new DeferredWrites(dim);
+		dimensions.put(dim, writes);
+		File file = getFile(dim);
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			NBTTagList list = CompressedStreamTools.read(file).getTagList("Chunks", Constants.NBT.TAG_COMPOUND);
+			for (int i = 0, e = list.tagCount(); i < e; ++i) {
+				NBTTagCompound tag = list.getCompoundTagAt(i);
+				int[] pos = tag.getIntArray("Pos");
+				int[] state = tag.getIntArray("State");
+				int[] expected = tag.getIntArray("Expected");
+				if (pos.length != state.length || pos.length != expected.length) {
+					throw new IOException("Malformed deferred writes.");
+				}
+				PendingChunk chunk = new PendingChunk(pos.length);
+				for (int j = 0; j < pos.length; ++j) {
+					chunk.states.put((short) pos[j], state[j]);
+					chunk.expected.put((short) pos[j], expected[j]);
+				}
+				writes.chunks.put(GenJournal.pack(tag.getInteger("X"), tag.getInteger("Z")), chunk);
+			}
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not read the deferred world generation writes for dimension " + dim + "; features crossing into unloaded chunks may be cut off.", e);
+		}
+	}
+
+	public static void save(int dim) {
+
+		DeferredWrites writes = dimensions.get(dim);
+		if (writes == null || !writes.dirty) {
+			return;
+		}
+		File file = getFile(dim);
+		if (writes.chunks.isEmpty()) {
+			if (file.exists() && !file.delete()) {
+				CoFHCore.LOG.error("Could not delete the deferred world generation writes for dimension " + dim + ".");
+				return;
+			}
+			writes.dirty = false;
+			return;
+		}
+		NBTTagList list = new NBTTagList();
+		for (TLongObjectIterator<PendingChunk> i = writes.chunks.iterator(); i.hasNext(); ) {
+			i.advance();
+			PendingChunk chunk = i.value();
+			int n = chunk.states.size();
+			int[] pos = new int[n], state = new int[n], expected = new int[n];
+			int j = 0;
+			for (TShortIntIterator k = chunk.states.iterator(); k.hasNext(); ++j) {
+				k.advance();
+				pos[j] = k.key();
+				state[j] = k.value();
+				expected[j] = chunk.expected.get(k.key());
+			}
+			NBTTagCompound tag = new NBTTagCompound();
+			tag.setInteger("X", GenJournal.unpackX(i.key()));
+			tag.setInteger("Z", GenJournal.unpackZ(i.key()));
+			tag.setIntArray("Pos", pos);
+			tag.setIntArray("State", state);
+			tag.setIntArray("Expected", expected);
+			list.appendTag(tag);
+		}
+		NBTTagCompound tag = new NBTTagCompound();
+		tag.setTag("Chunks", list);
+		try {
+			file.getParentFile().mkdirs();
+			CompressedStreamTools.safeWrite(tag, file);
+			writes.dirty = false;
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not save the deferred world generation writes for dimension " + dim + ".", e);
+		}
+	}
+
+	public static void unload(int dim) {
+
+		save(dim);
+		dimensions.remove(dim);
+	}
+
+	/**
+	 * Called when a chunk is loaded. Chunks that are still to be populated get their writes then instead.
+	 */
+	public static void chunkLoaded(int dim, int chunkX, int chunkZ, boolean populated) {
+
+		DeferredWrites writes = dimensions.get(dim);
+		if (writes != null && populated) {
+			long key = GenJournal.pack(chunkX, chunkZ);
+			if (writes.chunks.containsKey(key)) {
+				writes.ready.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Applies the writes of chunks that were loaded since the last call.
+	 */
+	public static void applyReady(World world) {
+
+		DeferredWrites writes = dimensions.get(world.provider.getDimension());
+		if (writes == null || writes.ready.isEmpty()) {
+			return;
+		}
+		for (int i = 0, e = writes.ready.size(); i < e; ++i) {
+			long key = writes.ready.getQuick(i);
+			writes.applyChunk(world, GenJournal.unpackX(key), GenJournal.unpackZ(key));
+		}
+		writes.ready.resetQuick();
+	}
+
+	/**
+	 * Applies the writes pending for a loaded chunk.
+	 *
+	 * @return The number of blocks changed.
+	 */
+	public static int apply(World world, int chunkX, int chunkZ) {
+
+		DeferredWrites writes = dimensions.get(world.provider.getDimension());
+		return writes == null ? 0 : writes.applyChunk(world, chunkX, chunkZ);
+	}
+
+	public boolean isEmpty() {
+
+		return chunks.isEmpty();
+	}
+
+	/**
+	 * @return The pending state of a block, or null if there is none.
+	 */
+	public IBlockState get(BlockPos pos) {
+
+		PendingChunk chunk = chunks.get(GenJournal.pack(pos.getX() >> 4, pos.getZ() >> 4));
+		if (chunk == null) {
+			return null;
+		}
+		short key = key(pos);
+		return chunk.states.containsKey(key) ? Block.getStateById(chunk.states.get(key)) : null;
+	}
+
+	/**
+	 * @param expected The state the block is assumed to have; the write is dropped if it does not.
+	 */
+	public void add(BlockPos pos, IBlockState state, IBlockState expected) {
+
+		long chunkKey = GenJournal.pack(pos.getX() >> 4, pos.getZ() >> 4);
+		PendingChunk chunk = chunks.get(chunkKey);
+		if (chunk == null) {
+			chunks.put(chunkKey, chunk = new PendingChunk(16));
+		}
+		short key = key(pos);
+		chunk.states.put(key, Block.getStateId(state));
+		if (!chunk.expected.containsKey(key)) {
+			chunk.expected.put(key, Block.getStateId(expected));
+		}
+		dirty = true;
+	}
+
+	/* HELPERS */
+	private int applyChunk(World world, int chunkX, int chunkZ) {
+
+		PendingChunk chunk = chunks.remove(GenJournal.pack(chunkX, chunkZ));
+		if (chunk == null) {
+			return 0;
+		}
+		dirty = true;
+		int changed = 0;
+		int x = chunkX << 4, z = chunkZ << 4;
+		for (TShortIntIterator i = chunk.states.iterator(); i.hasNext(); ) {
+			i.advance();
+			int key = i.key() & 0xFFFF;
+			BlockPos pos = new BlockPos(x + (key >> 4 & 15), key >> 8, z + (key & 15));
+			if (Block.getStateId(world.getBlockState(pos)) == chunk.expected.get(i.key()) && world.setBlockState(pos, Block.getStateById(i.value()), 2)) {
+				++changed;
+			}
+		}
+		return changed;
+	}
+
+	private static short key(BlockPos pos) {
+
+		return (short) (pos.getY() << 8 | (pos.getX() & 15) << 4 | pos.getZ() & 15);
+	}
+
+	private static class PendingChunk {
+
+		final TShortIntHashMap states;
+		final TShortIntHashMap expected;
+
+		PendingChunk(int capacity) {
+
+			states = new TShortIntHashMap(capacity);
+			expected = new TShortIntHashMap(capacity);
+		}
+	}
+
+}
@@ -0,0 +1,199 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraftforge.common.DimensionManager;
+import net.minecraftforge.common.util.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Assigns every feature name ever generated in a save a stable index, so chunks can record their generated features as a bitset instead of a list of names.
+ *
+ * The dictionary is kept in cofh/worldgen/features.dat and only ever grows; an index is never reused, even if its feature is removed. It is (re)loaded
+ * whenever the save directory changes. Chunk loads can happen off the server thread, so access is synchronized.
+ *
+ * New indices are not written out one by one; the file is saved by {@link #saveIfDirty()} before any chunk that may use them is saved.
+ */
+public class FeatureDictionary {
+
+	private static File loadedRoot;
+	private static int generation;
+	private static boolean writable;
+	private static boolean dirty;
+
+	private static TObjectIntHashMap<String> indices = new TObjectIntHashMap<>(64, 0.5F, -1);
+	private static ArrayList<String> names = new ArrayList<>();
+
+	private FeatureDictionary() {
+
+	}
+
+	/**
+	 * @return The index of the feature, assigning a new one if needed.
+	 */
+	public static synchronized int getIndex(String name) {
+
+		ensureLoaded();
+		int index = indices.get(name);
+		if (index < 0) {
+			index = names.size();
+			names.add(name);
+			indices.put(name, index);
+			dirty = true;
+		}
+		return index;
+	}
+
+	/**
+	 * Saves the dictionary if indices were assigned since it was last saved.
+	 */
+	public static synchronized void saveIfDirty() {
+
+		if (dirty) {
+			save();
+		}
+	}
+
+	/**
+	 * @return A number that changes whenever indices may have been reassigned, i.e. when a different save is loaded.
+	 */
+	public static synchronized int getGeneration() {
+
+		ensureLoaded();
+		return generation;
+	}
+
+	/**
+	 * Converts a legacy list of feature names to a bitset.
+	 */
+	public static long[] fromList(NBTTagList list) {
+
+		long[] bits = new long[0];
+		for (int i = 0, e = list.tagCount(); i < e; ++i) {
+			bits = set(bits, getIndex(list.getStringTagAt(i)));
+		}
+		return bits;
+	}
+
+	/* BITSETS */
+	public static boolean has(long[] bits, int index) {
+
+		int word = index >>> 6;
+		return word < bits.length && (bits[word] & 1L << index) != 0;
+	}
+
+	public static long[] set(long[] bits, int index) {
+
+		int word = index >>> 6;
+		if (word >= bits.length) {
+			long[] grown = new long[word + 1];
+			System.arraycopy(bits, 0, grown, 0, bits.length);
+			bits = grown;
+		}
+		bits[word] |= 1L << index;
+		return bits;
+	}
+
+	/**
+	 * @return TRUE if every bit of {@code required} is also set in {@code bits}.
+	 */
+	public static boolean containsAll(long[] bits, long[] required) {
+
+		for (int i = 0; i < required.length; ++i) {
+			long have = i < bits.length ? bits[i] : 0;
+			if ((required[i] & ~have) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * NBT has no long array in this version; bitsets are stored as pairs of ints.
+	 */
+	public static int[] toIntArray(long[] bits) {
+
+		int[] ints = new int[bits.length * 2];
+		for (int i = 0; i < bits.length; ++i) {
+			ints[i * 2] = (int) bits[i];
+			ints[i * 2 + 1] = (int) (bits[i] >>> 32);
+		}
+		return ints;
+	}
+
+	public static long[] fromIntArray(int[] ints) {
+
+		long[] bits = new long[ints.length / 2];
+		for (int i = 0; i < bits.length; ++i) {
+			bits[i] = ints[i * 2] & 0xFFFFFFFFL | (long) ints[i * 2 + 1] << 32;
+		}
+		return bits;
+	}
+
+	/* HELPERS */
+	private static File getFile(File root) {
+
+		return new File(root, "cofh/worldgen/features.dat");
+	}
+
+	private static void ensureLoaded() {
+
+		File root = DimensionManager.getCurrentSaveRootDirectory();
+		if (root == null || root.equals(loadedRoot)) {
+			return;
+		}
+		saveIfDirty();
+		loadedRoot = root;
+		++generation;
+		writable = true;
+		dirty = false;
+		indices.clear();
+		names.clear();
+
+		File file = getFile(root);
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			NBTTagList list = CompressedStreamTools.read(file).getTagList("Features", Constants.NBT.TAG_STRING);
+			for (int i = 0, e = list.tagCount(); i < e; ++i) {
+				String name = list.getStringTagAt(i);
+				names.add(name);
+				indices.put(name, i);
+			}
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not read the world generation feature dictionary; RetroGen may skip or repeat features in existing chunks. The file will not be overwritten.", e);
+			writable = false;
+		}
+	}
+
+	private static void save() {
+
+		dirty = false;
+		if (loadedRoot == null || !writable) {
+			return;
+		}
+		NBTTagList list = new NBTTagList();
+		for (String name : names) {
+			list.appendTag(new NBTTagString(name));
+		}
+		NBTTagCompound tag = new NBTTagCompound();
+		tag.setTag("Features", list);
+
+		File file = getFile(loadedRoot);
+		try {
+			file.getParentFile().mkdirs();
+			CompressedStreamTools.safeWrite(tag, file);
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not save the world generation feature dictionary.", e);
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package cofh.core.world;
+
+/**
+ * A 64-bit fingerprint of a set of features.
+ *
+ * Each feature (name and version) is hashed with 64-bit FNV-1a followed by the MurmurHash3 finalizer, and the set's fingerprint is the sum of its members'
+ * hashes. The sum does not depend on registration order and can be updated as features are added and removed; two different sets share a fingerprint with
+ * a chance of about 2^-64, instead of colliding whenever their String hash codes happen to add up.
+ */
+public class FeatureFingerprint {
+
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private long value;
+
+	public void add(String name, int version) {
+
+		value += hash(name, version);
+	}
+
+	public void remove(String name, int version) {
+
+		value -= hash(name, version);
+	}
+
+	public long get() {
+
+		return value;
+	}
+
+	public static long hash(String name, int version) {
+
+		long h = FNV_OFFSET;
+		for (int i = 0, e = name.length(); i < e; ++i) {
+			char c = name.charAt(i);
+			h = (h ^ (c & 0xFF)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
+		}
+		for (int i = 0; i < 4; ++i) {
+			h = (h ^ (version >>> (i * 8) & 0xFF)) * FNV_PRIME;
+		}
+		return mix(h);
+	}
+
+	/* HELPERS */
+	private static long mix(long h) {
+
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
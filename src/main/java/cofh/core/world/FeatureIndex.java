@@ -0,0 +1,139 @@
+package cofh.core.world;
+
+import cofh.lib.world.IFeatureGenerator;
+import cofh.lib.world.feature.FeatureBase.GenRestriction;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Keeps, per dimension, the registered features that can generate there, in registration order.
+ *
+ * Features only reject a dimension before they use the chunk's random, so leaving them out does not change what the remaining features generate. Features
+ * whose dimension restriction is unknown (see {@link #setDimensionRestriction}) are dispatched to every dimension.
+ */
+public class FeatureIndex {
+
+	private static final IFeatureGenerator[] EMPTY = new IFeatureGenerator[0];
+
+	private final List<IFeatureGenerator> features = new ArrayList<>();
+	private final IdentityHashMap<IFeatureGenerator, DimensionRestriction> restrictions = new IdentityHashMap<>();
+	private final TIntObjectHashMap<IFeatureGenerator[]> byDimension = new TIntObjectHashMap<>();
+	private final TIntObjectHashMap<int[]> dictionaryIndices = new TIntObjectHashMap<>();
+	private int dictionaryGeneration;
+
+	public void add(IFeatureGenerator feature) {
+
+		features.add(feature);
+		dictionaryIndices.clear();
+		for (int dim : byDimension.keys()) {
+			if (canGenerate(feature, dim)) {
+				IFeatureGenerator[] old = byDimension.get(dim);
+				IFeatureGenerator[] list = new IFeatureGenerator[old.length + 1];
+				System.arraycopy(old, 0, list, 0, old.length);
+				list[old.length] = feature;
+				byDimension.put(dim, list);
+			}
+		}
+	}
+
+	public void remove(IFeatureGenerator feature) {
+
+		features.remove(feature);
+		restrictions.remove(feature);
+		dictionaryIndices.clear();
+		for (int dim : byDimension.keys()) {
+			IFeatureGenerator[] old = byDimension.get(dim);
+			for (int i = 0; i < old.length; ++i) {
+				if (old[i] == feature) {
+					IFeatureGenerator[] list = new IFeatureGenerator[old.length - 1];
+					System.arraycopy(old, 0, list, 0, i);
+					System.arraycopy(old, i + 1, list, i, list.length - i);
+					byDimension.put(dim, list);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records which dimensions a feature is restricted to. Ignored for features that have not been added, so nothing outlives a feature that never registers.
+	 */
+	public void setDimensionRestriction(IFeatureGenerator feature, GenRestriction restriction, TIntHashSet dimensions) {
+
+		if (!features.contains(feature)) {
+			return;
+		}
+		if (restriction == GenRestriction.NONE) {
+			restrictions.remove(feature);
+		} else {
+			restrictions.put(feature, new DimensionRestriction(restriction == GenRestriction.WHITELIST, dimensions));
+		}
+		byDimension.clear();
+		dictionaryIndices.clear();
+	}
+
+	/**
+	 * @return The features to generate in a dimension. The array must not be modified.
+	 */
+	public IFeatureGenerator[] get(int dim) {
+
+		IFeatureGenerator[] list = byDimension.get(dim);
+		if (list == null) {
+			List<IFeatureGenerator> applicable = new ArrayList<>(features.size());
+			for (IFeatureGenerator feature : features) {
+				if (canGenerate(feature, dim)) {
+					applicable.add(feature);
+				}
+			}
+			list = applicable.isEmpty() ? EMPTY : applicable.toArray(new IFeatureGenerator[applicable.size()]);
+			byDimension.put(dim, list);
+		}
+		return list;
+	}
+
+	/**
+	 * @return The {@link FeatureDictionary} index of each feature returned by {@link #get(int)}, in the same order.
+	 */
+	public int[] getDictionaryIndices(int dim) {
+
+		int generation = FeatureDictionary.getGeneration();
+		if (generation != dictionaryGeneration) {
+			dictionaryIndices.clear();
+			dictionaryGeneration = generation;
+		}
+		int[] indices = dictionaryIndices.get(dim);
+		if (indices == null) {
+			IFeatureGenerator[] list = get(dim);
+			indices = new int[list.length];
+			for (int i = 0; i < list.length; ++i) {
+				indices[i] = FeatureDictionary.getIndex(WorldHandler.getDictionaryKey(list[i].getFeatureName()));
+			}
+			dictionaryIndices.put(dim, indices);
+		}
+		return indices;
+	}
+
+	/* HELPERS */
+	private boolean canGenerate(IFeatureGenerator feature, int dim) {
+
+		DimensionRestriction restriction = restrictions.get(feature);
+		return restriction == null || restriction.whitelist == restriction.dimensions.contains(dim);
+	}
+
+	private static class DimensionRestriction {
+
+		final boolean whitelist;
+		final TIntHashSet dimensions;
+
+		DimensionRestriction(boolean whitelist, TIntHashSet dimensions) {
+
+			this.whitelist = whitelist;
+			this.dimensions = dimensions;
+		}
+	}
+
+}
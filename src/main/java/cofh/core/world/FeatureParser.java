@@ -22,7 +22,10 @@ import cofh.lib.world.WorldGenMulti;
 import cofh.lib.world.biome.BiomeInfo;
 import cofh.lib.world.biome.BiomeInfoRarity;
 import cofh.lib.world.biome.BiomeInfoSet;
+import cofh.lib.world.feature.FeatureBase;
+import cofh.lib.world.feature.FeatureBase.GenRestriction;
 import com.typesafe.config.*;
+import gnu.trove.set.hash.TIntHashSet;
 import net.minecraft.block.Block;
 import net.minecraft.block.properties.IProperty;
 import net.minecraft.block.state.BlockStateContainer;
@@ -56,6 +59,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class FeatureParser {
@@ -70,6 +77,12 @@ public class FeatureParser {
 	private static HashMap<String, IGeneratorParser> generatorHandlers = new HashMap<>();
 	private static Logger log = LogManager.getFormatterLogger("CoFHWorld");
 	public static ArrayList<IFeatureGenerator> parsedFeatures = new ArrayList<>();
+	private static LinkedHashMap<String, GenEntry> registeredEntries = new LinkedHashMap<>();
+	/* constant providers are immutable, and shared by every entry that uses the same value */
+	private static ConcurrentHashMap<Number, INumberProvider> constants = new ConcurrentHashMap<>();
+
+	/* FALSE only while parseFeature(..., false) runs on this thread */
+	private static ThreadLocal<Boolean> compileNumbers = ThreadLocal.withInitial(() -> Boolean.TRUE);
 
 	private FeatureParser() {
 
@@ -160,6 +173,11 @@ public class FeatureParser {
 		log.info("Complete.");
 	}
 
+	static File getWorldGenFolder() {
+
+		return worldGenFolder;
+	}
+
 	private static void addFiles(ArrayList<File> list, File folder) {
 
 		final AtomicInteger dirs = new AtomicInteger(0);
@@ -184,9 +202,33 @@ public class FeatureParser {
 		list.addAll(Arrays.asList(fList));
 	}
 
+	/**
+	 * A resolved generation entry, and the feature registered for it, if any.
+	 */
+	static class GenEntry {
+
+		final String name;
+		final String file;
+		final Config genObject;
+		final long hash;
+		IFeatureGenerator feature;
+
+		GenEntry(String name, String file, Config genObject) {
+
+			this.name = name;
+			this.file = file;
+			this.genObject = genObject;
+			this.hash = FeatureFingerprint.hash(genObject.root().render(ConfigRenderOptions.concise()), 0);
+		}
+	}
+
 	private static class Includer implements ConfigIncluder, ConfigIncluderClasspath, ConfigIncluderFile, ConfigIncluderURL {
 
 		public static Includer includer = new Includer();
+		/* the files included by the file being parsed on this thread, for the cache */
+		public static ThreadLocal<List<File>> included = ThreadLocal.withInitial(ArrayList::new);
+		/* cleared by any include whose result is not decided by the files recorded above */
+		public static ThreadLocal<Boolean> cacheable = ThreadLocal.withInitial(() -> true);
 		public static ConfigParseOptions options = ConfigParseOptions.defaults().setSyntax(ConfigSyntax.CONF).setIncluder(includer);
 		public static ConfigResolveOptions resolveOptions = ConfigResolveOptions.noSystem();
 
@@ -210,26 +252,111 @@ public class FeatureParser {
 					return null;
 				}
 			} catch (IOException e) {
+				cacheable.set(false);
 				return null;
 			}
+			/* record every file parseFileAnySyntax may read, including missing ones: creating one later changes the result */
+			String extension = FilenameUtils.getExtension(file.getName());
+			if (extension.equals("conf") || extension.equals("json") || extension.equals("properties")) {
+				included.get().add(file);
+			} else {
+				included.get().add(new File(file.getPath() + ".conf"));
+				included.get().add(new File(file.getPath() + ".json"));
+				included.get().add(new File(file.getPath() + ".properties"));
+			}
 			return ConfigFactory.parseFileAnySyntax(file, context.parseOptions()).root();
 		}
 
 		@Override
 		public ConfigObject includeResources(ConfigIncludeContext context, String what) {
 
+			cacheable.set(false);
 			throw new IllegalArgumentException("Cannot include resources");
 		}
 
 		@Override
 		public ConfigObject includeURL(ConfigIncludeContext context, URL what) {
 
+			cacheable.set(false);
 			throw new IllegalArgumentException("Cannot include URLs");
 		}
 	}
 
 	public static void parseGenerationFiles() {
 
+		List<GenEntry> entries = readGenerationFiles();
+		if (entries == null) {
+			return;
+		}
+		String file = null;
+		for (GenEntry entry : entries) {
+			if (!entry.file.equals(file)) {
+				if (file != null) {
+					log.info("Finished reading %s", file);
+				}
+				file = entry.file;
+				log.info("Reading world generation info from: %s:", file);
+			}
+			registerEntry(entry);
+		}
+		if (file != null) {
+			log.info("Finished reading %s", file);
+		}
+	}
+
+	/**
+	 * Registers only the entries that were added or changed since the last parse, and removes the features of entries that were removed or changed.
+	 * Entries are compared by name and by a hash of their resolved contents. Must be called on the server thread.
+	 *
+	 * @return The number of entries added, changed and removed.
+	 */
+	static int[] applyGenerationEntries(List<GenEntry> entries) {
+
+		LinkedHashMap<String, GenEntry> next = new LinkedHashMap<>();
+		for (GenEntry entry : entries) {
+			if (next.putIfAbsent(entry.name, entry) != null) {
+				log.error("Error parsing generation entry: '%s' > It is a duplicate.", entry.name);
+			}
+		}
+		HashSet<String> changed = new HashSet<>();
+		int removed = 0;
+		for (Iterator<GenEntry> i = registeredEntries.values().iterator(); i.hasNext(); ) {
+			GenEntry old = i.next();
+			GenEntry entry = next.get(old.name);
+			if (entry != null && entry.hash == old.hash) {
+				continue;
+			}
+			if (old.feature != null) {
+				WorldHandler.instance.removeFeature(old.feature);
+				parsedFeatures.remove(old.feature);
+			}
+			i.remove();
+			if (entry == null) {
+				++removed;
+			} else {
+				changed.add(old.name);
+			}
+		}
+		int added = 0;
+		for (GenEntry entry : next.values()) {
+			if (!registeredEntries.containsKey(entry.name)) {
+				if (!changed.contains(entry.name)) {
+					++added;
+				}
+				registerEntry(entry);
+			}
+		}
+		return new int[] { added, changed.size(), removed };
+	}
+
+	/**
+	 * Finds, parses and resolves every world generation file, without registering anything. Does not touch any game state, so it may run off the server
+	 * thread, but not concurrently with itself.
+	 *
+	 * @return The entries of all files, in file order; or null if interrupted.
+	 */
+	static List<GenEntry> readGenerationFiles() {
+
 		ArrayList<File> worldGenList = new ArrayList<>(5);
 		{
 			int i = 0;
@@ -256,6 +383,16 @@ public class FeatureParser {
 			}
 		}
 
+		/* parsing and resolving the files is independent, and done in parallel; the entries are still registered in file order */
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(worldGenList.size(), Runtime.getRuntime().availableProcessors())));
+		ParsedConfigCache cache = new ParsedConfigCache(new File(CoreProps.configDir, "/cofh/world.cache"));
+		ArrayList<ForkJoinTask<Config>> parsed = new ArrayList<>(worldGenList.size());
+		for (File genFile : worldGenList) {
+			parsed.add(pool.submit(() -> parseFile(genFile, cache)));
+		}
+		pool.shutdown();
+
+		ArrayList<GenEntry> entries = new ArrayList<>();
 		for (int i = 0, e = worldGenList.size(); i < e; ++i) {
 
 			File genFile = worldGenList.get(i);
@@ -263,10 +400,16 @@ public class FeatureParser {
 
 			Config genList;
 			try {
-				genList = ConfigFactory.parseFile(genFile, Includer.options).resolve(Includer.resolveOptions);
-			} catch (Throwable t) {
-				log.error(String.format("Critical error reading from a world generation file: \"%s\" > Please be sure the file is correct!", genFile), t);
+				genList = parsed.get(i).get();
+				parsed.set(i, null);
+			} catch (ExecutionException ex) {
+				log.error(String.format("Critical error reading from a world generation file: \"%s\" > Please be sure the file is correct!", genFile), ex.getCause());
 				continue;
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				log.error("Interrupted while reading the world generation files.");
+				pool.shutdownNow();
+				return null;
 			}
 
 			if (genList.hasPath("dependencies") && !processDependencies(genList.getValue("dependencies"))) {
@@ -275,7 +418,6 @@ public class FeatureParser {
 			}
 
 			if (genList.hasPath("populate")) {
-				log.info("Reading world generation info from: %s:", file);
 				Config genData = genList.getConfig("populate");
 				for (Entry<String, ConfigValue> genEntry : genData.root().entrySet()) {
 					String key = genEntry.getKey();
@@ -283,32 +425,71 @@ public class FeatureParser {
 						if (genEntry.getValue().valueType() != ConfigValueType.OBJECT) {
 							log.error("Error parsing generation entry: '%s' > This must be an object and is not.", key);
 						} else {
-							switch (parseGenerationEntry(key, genData.getConfig(key))) {
-								case SUCCESS:
-									log.debug("Generation entry successfully parsed: '%s'", key);
-									break;
-								case FAIL:
-									log.error("Error parsing generation entry: '%s' > Please check the parameters.", key);
-									break;
-								case PASS:
-									log.error("Error parsing generation entry: '%s' > It is a duplicate.", key);
-							}
+							entries.add(new GenEntry(key, file, genData.getConfig(key)));
 						}
 					} catch (ConfigException ex) {
-						String line = "";
-						if (ex.origin() != null) {
-							line = String.format(" on line %d", ex.origin().lineNumber());
-						}
-						log.error(String.format("Error parsing entry '%s'%s: %s", key, line, ex.getMessage()));
-						continue;
-					} catch (Throwable t) {
-						log.fatal(String.format("There was a severe error parsing '%s'!", key), t);
+						logConfigException(key, file, ex);
 					}
 				}
-				log.info("Finished reading %s", file);
-			} else {
+			}
+		}
+		cache.retain(worldGenList);
+		cache.save();
+		return entries;
+	}
+
+	private static void registerEntry(GenEntry entry) {
 
+		String key = entry.name;
+		try {
+			switch (parseGenerationEntry(entry)) {
+				case SUCCESS:
+					log.debug("Generation entry successfully parsed: '%s'", key);
+					break;
+				case FAIL:
+					log.error("Error parsing generation entry: '%s' in %s > Please check the parameters.", key, entry.file);
+					break;
+				case PASS:
+					log.error("Error parsing generation entry: '%s' > It is a duplicate.", key);
+					return;
 			}
+		} catch (ConfigException ex) {
+			logConfigException(key, entry.file, ex);
+		} catch (Throwable t) {
+			log.fatal(String.format("There was a severe error parsing '%s' in %s!", key, entry.file), t);
+		}
+		/* failed entries are recorded too, so they are only retried once they change */
+		registeredEntries.putIfAbsent(key, entry);
+	}
+
+	private static void logConfigException(String key, String file, ConfigException ex) {
+
+		/* cached files keep no line numbers, so the file is always named */
+		String line = "";
+		if (ex.origin() != null && ex.origin().lineNumber() >= 0) {
+			line = String.format(" on line %d", ex.origin().lineNumber());
+		}
+		log.error(String.format("Error parsing entry '%s' in %s%s: %s", key, file, line, ex.getMessage()));
+	}
+
+	private static Config parseFile(File genFile, ParsedConfigCache cache) {
+
+		Config genList = cache.get(genFile);
+		if (genList != null) {
+			log.debug("Using the cached contents of %s.", genFile);
+			return genList;
+		}
+		List<File> included = Includer.included.get();
+		included.clear();
+		Includer.cacheable.set(true);
+		try {
+			genList = ConfigFactory.parseFile(genFile, Includer.options).resolve(Includer.resolveOptions);
+			if (Includer.cacheable.get()) {
+				cache.put(genFile, included, genList);
+			}
+			return genList;
+		} finally {
+			included.clear();
 		}
 	}
 
@@ -379,8 +560,10 @@ public class FeatureParser {
 		return true == retComp;
 	}
 
-	private static EnumActionResult parseGenerationEntry(String featureName, Config genObject) {
+	private static EnumActionResult parseGenerationEntry(GenEntry entry) {
 
+		String featureName = entry.name;
+		Config genObject = entry.genObject;
 		if (genObject.hasPath("enabled")) {
 			if (!genObject.getBoolean("enabled")) {
 				log.info('"' + featureName + "\" is disabled.");
@@ -388,20 +571,63 @@ public class FeatureParser {
 			}
 		}
 
+		IFeatureGenerator feature = parseFeature(featureName, genObject);
+		if (feature == null) {
+			return EnumActionResult.FAIL;
+		}
+		if (WorldHandler.isRegistered(feature.getFeatureName())) {
+			return EnumActionResult.PASS;
+		}
+		WorldHandler.setFeatureVersion(feature.getFeatureName(), genObject.hasPath("version") ? genObject.getInt("version") : 0);
+		if (!WorldHandler.addFeature(feature)) {
+			return EnumActionResult.PASS;
+		}
+		if (feature instanceof FeatureBase) {
+			GenRestriction dimRes = ((FeatureBase) feature).dimensionRestriction;
+			if (dimRes != GenRestriction.NONE) {
+				WorldHandler.setDimensionRestriction(feature, dimRes, parseDimensionRestrictions(genObject));
+			}
+		}
+		parsedFeatures.add(feature);
+		entry.feature = feature;
+		return EnumActionResult.SUCCESS;
+	}
+
+	/**
+	 * Builds the feature for a generation entry, without registering it.
+	 *
+	 * @return The feature, or null if the entry is invalid.
+	 */
+	public static IFeatureGenerator parseFeature(String featureName, Config genObject) {
+
+		return parseFeature(featureName, genObject, true);
+	}
+
+	/**
+	 * @param compile If FALSE, number values are not compiled (see {@link #parseNumberValue(ConfigValue, long, long)}); only useful to measure what compiling
+	 *                saves.
+	 */
+	public static IFeatureGenerator parseFeature(String featureName, Config genObject, boolean compile) {
+
+		if (!compile) {
+			compileNumbers.set(Boolean.FALSE);
+			try {
+				return parseFeature(featureName, genObject, true);
+			} finally {
+				compileNumbers.remove();
+			}
+		}
 		String templateName = parseTemplate(genObject);
 		IFeatureParser template = templateHandlers.get(templateName);
 		if (template != null) {
 			IFeatureGenerator feature = template.parseFeature(featureName, genObject, log);
-			if (feature != null) {
-				parsedFeatures.add(feature);
-				return WorldHandler.addFeature(feature) ? EnumActionResult.SUCCESS : EnumActionResult.PASS;
+			if (feature == null) {
+				log.warn("Template '" + templateName + "' failed to parse its entry!");
 			}
-			log.warn("Template '" + templateName + "' failed to parse its entry!");
-		} else {
-			log.warn("Unknown template + '" + templateName + "'.");
+			return feature;
 		}
-
-		return EnumActionResult.FAIL;
+		log.warn("Unknown template + '" + templateName + "'.");
+		return null;
 	}
 
 	private static String parseTemplate(Config genObject) {
@@ -484,6 +710,39 @@ public class FeatureParser {
 		return set;
 	}
 
+	/**
+	 * @return The dimensions listed in the "dimension" entry of a feature.
+	 */
+	public static TIntHashSet parseDimensionRestrictions(Config genObject) {
+
+		TIntHashSet dimensions = new TIntHashSet();
+		String field = "dimension";
+		ConfigValue data = genObject.getValue(field);
+		ConfigList restrictionList = null;
+		switch (data.valueType()) {
+			case OBJECT:
+				field += ".value";
+			case LIST:
+				restrictionList = genObject.getList(field);
+				break;
+			case NUMBER:
+				dimensions.add(genObject.getNumber(field).intValue());
+				break;
+			default:
+				// unreachable
+				break;
+		}
+		if (restrictionList != null) {
+			for (int i = 0; i < restrictionList.size(); i++) {
+				ConfigValue val = restrictionList.get(i);
+				if (val.valueType() == ConfigValueType.NUMBER) {
+					dimensions.add(((Number) val.unwrapped()).intValue());
+				}
+			}
+		}
+		return dimensions;
+	}
+
 	private static BiomeInfo parseBiomeData(ConfigValue element) {
 
 		BiomeInfo info = null;
@@ -871,25 +1130,44 @@ public class FeatureParser {
 		return parseNumberValue(genElement, Long.MIN_VALUE, Long.MAX_VALUE);
 	}
 
+	/**
+	 * Parses a number value into a provider. Unless parsed through {@link #parseFeature(String, Config, boolean)} without compiling, the provider is compiled
+	 * as it is built:
+	 * <ul>
+	 * <li>Every number is stored as a Long, or a Double if it has a fraction, whatever type the config parsed it as, so the providers only ever see one or two
+	 * Number classes.</li>
+	 * <li>Ranges that can only produce one value, and a variance of 0, fold to constants, which draw nothing from the random.</li>
+	 * <li>Constants are shared between every entry that uses the same value.</li>
+	 * </ul>
+	 */
 	public static INumberProvider parseNumberValue(ConfigValue genElement, long min, long max) {
 
 		switch (genElement.valueType()) {
 			case NUMBER:
-				return new ConstantProvider(boundCheck((Number) genElement.unwrapped(), min, max));
+				return getConstant(boundCheck((Number) genElement.unwrapped(), min, max));
 			case OBJECT:
 				ConfigObject genData = (ConfigObject) genElement;
 				Config genProp = genData.toConfig();
 				switch (genData.size()) {
 					case 1:
 						if (genData.containsKey("value")) {
-							return new ConstantProvider(boundCheck(genProp.getNumber("value"), min, max));
+							return getConstant(boundCheck(genProp.getNumber("value"), min, max));
 						} else if (genData.containsKey("variance")) {
-							return new SkellamRandomProvider(boundCheck(genProp.getNumber("variance"), min, max));
+							Number variance = boundCheck(genProp.getNumber("variance"), min, max);
+							if (compileNumbers.get() && variance.doubleValue() == 0) {
+								return getConstant(0);
+							}
+							return new SkellamRandomProvider(variance);
 						}
 						break;
 					case 2:
 						if (genData.containsKey("min") && genData.containsKey("max")) {
-							return new UniformRandomProvider(boundCheck(genProp.getNumber("min"), min, max), boundCheck(genProp.getNumber("max"), min, max));
+							Number low = boundCheck(genProp.getNumber("min"), min, max);
+							Number high = boundCheck(genProp.getNumber("max"), min, max);
+							if (compileNumbers.get() && low.equals(high)) {
+								return getConstant(low);
+							}
+							return new UniformRandomProvider(low, high);
 						}
 						break;
 					default:
@@ -903,11 +1181,29 @@ public class FeatureParser {
 		}
 	}
 
+	public static INumberProvider getConstant(Number value) {
+
+		if (!compileNumbers.get()) {
+			return new ConstantProvider(value);
+		}
+		return constants.computeIfAbsent(normalize(value), ConstantProvider::new);
+	}
+
+	private static Number normalize(Number value) {
+
+		if (value instanceof Long || !compileNumbers.get()) {
+			return value;
+		}
+		double d = value.doubleValue();
+		long l = value.longValue();
+		return d == l ? (Number) l : (Number) d;
+	}
+
 	private static Number boundCheck(Number value, long min, long max) {
 
 		if (value.longValue() >= min) {
 			if (value.longValue() <= max) {
-				return value;
+				return normalize(value);
 			}
 			return new Long(max);
 		}
@@ -0,0 +1,134 @@
+package cofh.core.world;
+
+import java.util.Random;
+
+/**
+ * A SplitMix64 generator that can be passed anywhere a {@link Random} is expected, for the single-threaded world generation path.
+ *
+ * Unlike Random it keeps its state in a plain field, without an AtomicLong compare-and-set per call, and reseeding it allocates nothing. It is NOT thread
+ * safe. Its sequence differs from that of Random for the same seed.
+ */
+public class FeatureRandom extends Random {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long state;
+	private double nextNextGaussian;
+	private boolean haveNextNextGaussian;
+
+	public FeatureRandom() {
+
+		this(System.nanoTime());
+	}
+
+	public FeatureRandom(long seed) {
+
+		super(seed);
+	}
+
+	/**
+	 * @return The seed for a chunk, from which the seed of every feature in it is derived.
+	 */
+	public static long getChunkSeed(long worldSeed, int chunkX, int chunkZ) {
+
+		return mix(worldSeed ^ mix((long) chunkX << 32 | chunkZ & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Seeds the generator for one feature in a chunk. The sequence depends only on the chunk and the feature, not on what was generated before.
+	 */
+	public void setFeatureSeed(long chunkSeed, String featureName) {
+
+		setSeed(mix(chunkSeed ^ FeatureFingerprint.hash(featureName, 0)));
+	}
+
+	@Override
+	public void setSeed(long seed) {
+
+		state = seed;
+		haveNextNextGaussian = false;
+	}
+
+	@Override
+	protected int next(int bits) {
+
+		return (int) (nextLong() >>> 64 - bits);
+	}
+
+	@Override
+	public long nextLong() {
+
+		return mix(state += GOLDEN_GAMMA);
+	}
+
+	@Override
+	public int nextInt() {
+
+		return (int) (nextLong() >>> 32);
+	}
+
+	@Override
+	public int nextInt(int bound) {
+
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		/* Lemire's multiply and shift, rejecting the few values that would bias the result */
+		long m = (nextLong() >>> 32) * bound;
+		long low = m & 0xFFFFFFFFL;
+		if (low < bound) {
+			long threshold = (0x100000000L - bound) % bound;
+			while (low < threshold) {
+				m = (nextLong() >>> 32) * bound;
+				low = m & 0xFFFFFFFFL;
+			}
+		}
+		return (int) (m >>> 32);
+	}
+
+	@Override
+	public boolean nextBoolean() {
+
+		return nextLong() < 0;
+	}
+
+	@Override
+	public float nextFloat() {
+
+		return (nextLong() >>> 40) * 0x1.0p-24F;
+	}
+
+	@Override
+	public double nextDouble() {
+
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	public double nextGaussian() {
+
+		if (haveNextNextGaussian) {
+			haveNextNextGaussian = false;
+			return nextNextGaussian;
+		}
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		nextNextGaussian = v2 * multiplier;
+		haveNextNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	/* HELPERS */
+	private static long mix(long z) {
+
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		return z ^ z >>> 31;
+	}
+
+}
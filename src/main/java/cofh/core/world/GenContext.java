@@ -0,0 +1,117 @@
+package cofh.core.world;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeProvider;
+import net.minecraft.world.chunk.Chunk;
+
+import java.util.Arrays;
+
+/**
+ * What the features generating in one chunk share about it: its biomes, its heightmaps, and whether a village generated in it.
+ *
+ * The biomes of the chunk are read once, when generation of the chunk begins. Heights are looked up at most once per column, and looked up again after a block
+ * in the column is changed through the generation view. Columns outside the chunk are looked up in the world every time.
+ */
+public class GenContext {
+
+	private static final int UNKNOWN = -1;
+
+	public int chunkX;
+	public int chunkZ;
+	public boolean hasVillage;
+
+	private World world;
+	private final Biome[] biomes = new Biome[256];
+	private final int[] surface = new int[256];
+	private final int[] fluid = new int[256];
+	private final MutableBlockPos pos = new MutableBlockPos();
+
+	/**
+	 * @param world The world itself, not a view of it; lookups go to it directly.
+	 */
+	void begin(World world, int chunkX, int chunkZ, boolean hasVillage) {
+
+		this.world = world;
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		this.hasVillage = hasVillage;
+
+		Chunk chunk = world.getChunkFromChunkCoords(chunkX, chunkZ);
+		BiomeProvider provider = world.getBiomeProvider();
+		int x = chunkX << 4, z = chunkZ << 4;
+		for (int i = 0; i < 256; ++i) {
+			biomes[i] = chunk.getBiome(pos.setPos(x + (i & 15), 0, z + (i >> 4)), provider);
+		}
+		Arrays.fill(surface, UNKNOWN);
+		Arrays.fill(fluid, UNKNOWN);
+	}
+
+	void end() {
+
+		world = null;
+	}
+
+	public World getWorld() {
+
+		return world;
+	}
+
+	public boolean contains(int x, int z) {
+
+		return x >> 4 == chunkX && z >> 4 == chunkZ;
+	}
+
+	public Biome getBiome(int x, int z) {
+
+		if (!contains(x, z)) {
+			return world.getBiome(new BlockPos(x, 0, z));
+		}
+		return biomes[(z & 15) << 4 | x & 15];
+	}
+
+	/**
+	 * @return The height above the topmost block that blocks movement and is not leaves or foliage, as {@link World#getTopSolidOrLiquidBlock}.
+	 */
+	public int getSurfaceHeight(int x, int z) {
+
+		if (!contains(x, z)) {
+			return world.getTopSolidOrLiquidBlock(new BlockPos(x, 0, z)).getY();
+		}
+		int i = (z & 15) << 4 | x & 15;
+		if (surface[i] == UNKNOWN) {
+			surface[i] = world.getTopSolidOrLiquidBlock(pos.setPos(x, 0, z)).getY();
+		}
+		return surface[i];
+	}
+
+	/**
+	 * @return The height above the topmost block that blocks movement or is a liquid, as {@link World#getPrecipitationHeight}.
+	 */
+	public int getFluidHeight(int x, int z) {
+
+		if (!contains(x, z)) {
+			return world.getPrecipitationHeight(new BlockPos(x, 0, z)).getY();
+		}
+		int i = (z & 15) << 4 | x & 15;
+		if (fluid[i] == UNKNOWN) {
+			fluid[i] = world.getPrecipitationHeight(pos.setPos(x, 0, z)).getY();
+		}
+		return fluid[i];
+	}
+
+	/**
+	 * Forgets the heights of a column after a block in it changed.
+	 */
+	void invalidate(int x, int z) {
+
+		if (contains(x, z)) {
+			int i = (z & 15) << 4 | x & 15;
+			surface[i] = UNKNOWN;
+			fluid[i] = UNKNOWN;
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import gnu.trove.list.array.TLongArrayList;
+import net.minecraftforge.common.DimensionManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Persists the retrogen and pregen queues of a dimension as a binary, append-only journal of packed chunk coordinates.
+ *
+ * Every queue change is appended as a 9 byte record (operation + packed long). A snapshot of the live queues periodically compacts the journal: the snapshot
+ * is written to a temporary file, synced and atomically moved into place before the journal is truncated. Replaying the journal over the snapshot is
+ * idempotent, so a crash at any point (including a torn final record) loses at most the records that had not reached the disk yet.
+ *
+ * Pregen progress is saved by {@link PregenTask}; the pregen records are only read, to resume journals written by older versions.
+ */
+public class GenJournal {
+
+	private static final int MAGIC_JOURNAL = 0x43474A4C; // CGJL
+	private static final int MAGIC_SNAPSHOT = 0x43474A53; // CGJS
+	private static final byte VERSION = 1;
+
+	private static final int COMPACT_MIN_RECORDS = 4096;
+
+	public static final byte RETRO_ADD = 1;
+	public static final byte RETRO_DONE = 2;
+	public static final byte PRE_ADD = 3;
+	public static final byte PRE_DONE = 4;
+
+	private final int dimension;
+	private final File journalFile;
+	private final File snapshotFile;
+	private final File snapshotTemp;
+
+	private DataOutputStream out;
+	private int records;
+	private boolean dirty;
+
+	public GenJournal(int dim) {
+
+		dimension = dim;
+		File dir = new File(DimensionManager.getCurrentSaveRootDirectory(), "cofh/worldgen");
+		if (!dir.exists() && !dir.mkdirs()) {
+			CoFHCore.LOG.error("Could not create the world generation journal directory " + dir + ".");
+		}
+		journalFile = new File(dir, "DIM" + dim + ".journal");
+		snapshotFile = new File(dir, "DIM" + dim + ".snapshot");
+		snapshotTemp = new File(dir, "DIM" + dim + ".snapshot.tmp");
+	}
+
+	public static long pack(int chunkX, int chunkZ) {
+
+		return chunkX & 0xFFFFFFFFL | (chunkZ & 0xFFFFFFFFL) << 32;
+	}
+
+	public static int unpackX(long key) {
+
+		return (int) key;
+	}
+
+	public static int unpackZ(long key) {
+
+		return (int) (key >>> 32);
+	}
+
+	/**
+	 * Reads the snapshot and replays the journal over it.
+	 *
+	 * @param retro Receives the keys of the queued retrogen chunks, in queue order.
+	 * @param pre   Receives the keys of the queued pregen chunks, in queue order.
+	 */
+	public synchronized void load(TLongArrayList retro, TLongArrayList pre) {
+
+		/* insertion ordered sets without boxing: a key is queued while the map holds its (1-based) position in the list */
+		ChunkKeyMap retroSet = new ChunkKeyMap();
+		ChunkKeyMap preSet = new ChunkKeyMap();
+		TLongArrayList retroOrder = new TLongArrayList();
+		TLongArrayList preOrder = new TLongArrayList();
+
+		if (snapshotFile.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+				if (in.readInt() == MAGIC_SNAPSHOT && in.readByte() == VERSION) {
+					for (int i = in.readInt(); i > 0; --i) {
+						add(retroSet, retroOrder, in.readLong());
+					}
+					for (int i = in.readInt(); i > 0; --i) {
+						add(preSet, preOrder, in.readLong());
+					}
+				} else {
+					CoFHCore.LOG.error("Ignoring world generation snapshot for dimension " + dimension + ": unknown format.");
+				}
+			} catch (IOException e) {
+				CoFHCore.LOG.error("Could not read the world generation snapshot for dimension " + dimension + ".", e);
+			}
+		}
+		int replayed = 0;
+		if (journalFile.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+				if (in.readInt() == MAGIC_JOURNAL && in.readByte() == VERSION) {
+					for (; ; ++replayed) {
+						byte op = in.readByte();
+						long key = in.readLong();
+						switch (op) {
+							case RETRO_ADD:
+								add(retroSet, retroOrder, key);
+								break;
+							case RETRO_DONE:
+								retroSet.remove(key);
+								break;
+							case PRE_ADD:
+								add(preSet, preOrder, key);
+								break;
+							case PRE_DONE:
+								preSet.remove(key);
+								break;
+							default:
+								throw new IOException("Invalid journal operation " + op + ".");
+						}
+					}
+				} else {
+					CoFHCore.LOG.error("Ignoring world generation journal for dimension " + dimension + ": unknown format.");
+				}
+			} catch (EOFException e) {
+				// end of the journal, or a torn final record from a crash
+			} catch (IOException e) {
+				CoFHCore.LOG.error("Could not fully read the world generation journal for dimension " + dimension + ".", e);
+			}
+		}
+		collect(retroSet, retroOrder, retro);
+		collect(preSet, preOrder, pre);
+		if (retro.size() + pre.size() > 0) {
+			CoFHCore.LOG.info("Restored " + retro.size() + " RetroGen and " + pre.size() + " PreGen chunks for dimension " + dimension + " (" + replayed + " journal records).");
+		}
+	}
+
+	public synchronized void append(byte op, long key) {
+
+		if (out == null) {
+			return;
+		}
+		try {
+			out.writeByte(op);
+			out.writeLong(key);
+			++records;
+			dirty = true;
+		} catch (IOException e) {
+			fail("write to", e);
+		}
+	}
+
+	public synchronized void flush() {
+
+		if (out == null || !dirty) {
+			return;
+		}
+		try {
+			out.flush();
+			dirty = false;
+		} catch (IOException e) {
+			fail("flush", e);
+		}
+	}
+
+	public boolean needsCompaction(int liveEntries) {
+
+		return records > COMPACT_MIN_RECORDS && records > liveEntries * 2;
+	}
+
+	/**
+	 * Writes a snapshot of the live queues and starts a new, empty journal.
+	 */
+	public synchronized void compact(TLongArrayList retro, TLongArrayList pre) {
+
+		try (FileOutputStream file = new FileOutputStream(snapshotTemp)) {
+			DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(file));
+			snapshot.writeInt(MAGIC_SNAPSHOT);
+			snapshot.writeByte(VERSION);
+			snapshot.writeInt(retro.size());
+			for (int i = 0, e = retro.size(); i < e; ++i) {
+				snapshot.writeLong(retro.getQuick(i));
+			}
+			snapshot.writeInt(pre.size());
+			for (int i = 0, e = pre.size(); i < e; ++i) {
+				snapshot.writeLong(pre.getQuick(i));
+			}
+			snapshot.flush();
+			file.getFD().sync();
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not write the world generation snapshot for dimension " + dimension + ".", e);
+			return;
+		}
+		try {
+			Files.move(snapshotTemp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not replace the world generation snapshot for dimension " + dimension + ".", e);
+			return;
+		}
+		open(false);
+	}
+
+	/**
+	 * Opens the journal for writing.
+	 *
+	 * @param append If FALSE, the journal is truncated.
+	 */
+	public synchronized void open(boolean append) {
+
+		close();
+		try {
+			boolean header = !append || !journalFile.exists() || journalFile.length() == 0;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, !header)));
+			if (header) {
+				out.writeInt(MAGIC_JOURNAL);
+				out.writeByte(VERSION);
+				out.flush();
+			}
+			records = 0;
+			dirty = false;
+		} catch (IOException e) {
+			fail("open", e);
+		}
+	}
+
+	public synchronized void close() {
+
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not close the world generation journal for dimension " + dimension + ".", e);
+		}
+		out = null;
+	}
+
+	/* HELPERS */
+	private static void add(ChunkKeyMap set, TLongArrayList order, long key) {
+
+		if (!set.containsKey(key)) {
+			order.add(key);
+			set.put(key, order.size());
+		}
+	}
+
+	private static void collect(ChunkKeyMap set, TLongArrayList order, TLongArrayList keys) {
+
+		keys.ensureCapacity(set.size());
+		for (int i = 0, e = order.size(); i < e; ++i) {
+			long key = order.getQuick(i);
+			if (set.get(key) == i + 1) {
+				keys.add(key);
+			}
+		}
+	}
+
+	private void fail(String action, IOException e) {
+
+		CoFHCore.LOG.error("Could not " + action + " the world generation journal for dimension " + dimension + "; queue changes will not be persisted.", e);
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException ignored) {
+			}
+			out = null;
+		}
+	}
+
+}
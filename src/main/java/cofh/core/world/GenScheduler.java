@@ -0,0 +1,176 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import cofh.core.util.helpers.TickTimeHelper;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Hands out a per-server-tick time budget for retroactive and pre-generation.
+ *
+ * The budget is shared by all dimensions. When adaptive, it is re-evaluated once per second against the measured server tick time: it grows by a fraction
+ * of the remaining headroom while the server keeps up with 20 TPS, and is halved as soon as the server falls behind.
+ */
+public class GenScheduler {
+
+	private static final int ADJUST_INTERVAL = TickTimeHelper.MAX_TPS;
+	private static final double HEADROOM_MS = 5.0D;
+	private static final double GROWTH_FACTOR = 0.25D;
+	private static final long NANOS_PER_MS = 1000000L;
+
+	private static boolean adaptive = true;
+	private static long budgetMin = 1 * NANOS_PER_MS;
+	private static long budgetMax = 25 * NANOS_PER_MS;
+	private static long budget = 5 * NANOS_PER_MS;
+
+	private static long spent;
+	private static boolean saturated;
+	private static int ticks;
+	private static long lastSample = System.nanoTime();
+
+	private static TIntObjectHashMap<Stats> stats = new TIntObjectHashMap<>();
+
+	private GenScheduler() {
+
+	}
+
+	public static void initialize() {
+
+		String category = "World.Scheduler";
+		String comment;
+
+		comment = "The time (in milliseconds) that retroactive and pre-generation may use every server tick, shared across all dimensions.";
+		int initial = CoFHCore.CONFIG_CORE.getConfiguration().getInt("TickBudget", category, 5, 1, 50, comment);
+
+		comment = "If TRUE, the tick budget will grow while the server has spare tick time and shrink when the server falls behind 20 TPS.";
+		adaptive = CoFHCore.CONFIG_CORE.getConfiguration().getBoolean("AdaptiveTickBudget", category, adaptive, comment);
+
+		comment = "The lowest the tick budget (in milliseconds) can shrink to, if adaptive.";
+		int min = CoFHCore.CONFIG_CORE.getConfiguration().getInt("TickBudgetMin", category, 1, 1, 50, comment);
+
+		comment = "The highest the tick budget (in milliseconds) can grow to, if adaptive.";
+		int max = CoFHCore.CONFIG_CORE.getConfiguration().getInt("TickBudgetMax", category, 25, 1, 50, comment);
+
+		budgetMin = Math.min(min, max) * NANOS_PER_MS;
+		budgetMax = Math.max(min, max) * NANOS_PER_MS;
+		budget = Math.max(budgetMin, Math.min(budgetMax, initial * NANOS_PER_MS));
+	}
+
+	/**
+	 * Called at the start of every server tick.
+	 */
+	public static void startTick() {
+
+		spent = 0;
+		if (++ticks < ADJUST_INTERVAL) {
+			return;
+		}
+		ticks = 0;
+		long now = System.nanoTime();
+		long elapsed = now - lastSample;
+		lastSample = now;
+
+		for (Stats s : stats.valueCollection()) {
+			s.sample(elapsed);
+		}
+		if (adaptive) {
+			adjustBudget();
+		}
+		saturated = false;
+	}
+
+	/**
+	 * @return The time stamp to pass to {@link #hasTime(long)} and {@link #endBatch(long)}.
+	 */
+	public static long startBatch() {
+
+		return System.nanoTime();
+	}
+
+	public static boolean hasTime(long batchStart) {
+
+		if (spent + System.nanoTime() - batchStart < budget) {
+			return true;
+		}
+		saturated = true;
+		return false;
+	}
+
+	public static void endBatch(long batchStart) {
+
+		spent += System.nanoTime() - batchStart;
+	}
+
+	public static void recordRetroGen(int dim) {
+
+		getStats(dim).retro++;
+	}
+
+	public static void recordPreGen(int dim) {
+
+		getStats(dim).pregen++;
+	}
+
+	public static long getBudget() {
+
+		return budget;
+	}
+
+	public static boolean isAdaptive() {
+
+		return adaptive;
+	}
+
+	public static Stats getStats(int dim) {
+
+		Stats s = stats.get(dim);
+		if (s == null) {
+			stats.put(dim, s = new Stats());
+		}
+		return s;
+	}
+
+	/* HELPERS */
+	private static void adjustBudget() {
+
+		double tickMs = TickTimeHelper.getTickMs(null);
+		if (tickMs <= 0) {
+			return;
+		}
+		long old = budget;
+		if (tickMs > TickTimeHelper.MIN_TICK_MS) {
+			budget = Math.max(budgetMin, budget / 2);
+		} else if (saturated && tickMs < TickTimeHelper.MIN_TICK_MS - HEADROOM_MS) {
+			budget = Math.min(budgetMax, budget + (long) ((TickTimeHelper.MIN_TICK_MS - HEADROOM_MS - tickMs) * GROWTH_FACTOR * NANOS_PER_MS));
+		}
+		if (old != budget) {
+			CoFHCore.LOG.debug(String.format("World generation tick budget changed from %.2fms to %.2fms (server tick: %.2fms).", old / (double) NANOS_PER_MS, budget / (double) NANOS_PER_MS, tickMs));
+		}
+	}
+
+	public static class Stats {
+
+		private static final double SMOOTHING = 0.3D;
+
+		public long retro;
+		public long pregen;
+		private long lastTotal;
+		private double rate;
+
+		void sample(long elapsedNanos) {
+
+			long total = retro + pregen;
+			double current = (total - lastTotal) * 1.0E9D / elapsedNanos;
+			rate += (current - rate) * SMOOTHING;
+			lastTotal = total;
+		}
+
+		/**
+		 * @return The smoothed number of chunks generated per second.
+		 */
+		public double getThroughput() {
+
+			return rate;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package cofh.core.world;
+
+import cofh.lib.world.IFeatureGenerator;
+import net.minecraft.world.World;
+
+import java.util.Random;
+
+/**
+ * Implement this interface on features that want the {@link GenContext} of the chunk they generate in, instead of looking its biomes and heights up in the
+ * world themselves. {@link WorldHandler} calls it in place of {@link IFeatureGenerator#generateFeature}.
+ */
+public interface IContextFeatureGenerator extends IFeatureGenerator {
+
+	/**
+	 * @param context The chunk being generated; only valid for the duration of the call.
+	 * @return TRUE if anything was generated.
+	 */
+	boolean generateFeature(Random random, GenContext context, World world, boolean newGen);
+
+}
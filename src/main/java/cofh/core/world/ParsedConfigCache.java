@@ -0,0 +1,347 @@
+package cofh.core.world;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValueFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Caches resolved world generation files in a compact binary form, so unchanged files are not parsed again.
+ *
+ * Every entry records the size, modification time and content hash of its file and of every file it included. An entry is used only if all of them are
+ * unchanged; if only the modification time differs, the content hash decides. Files whose result depends on anything else, such as a classpath or URL
+ * include, are not cached. Values keep their types, but not their line numbers, so errors in cached entries are reported by file.
+ */
+public class ParsedConfigCache {
+
+	private static final int MAGIC = 0x43574743; // CWGC
+	private static final byte VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte INT = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte STRING = 5;
+	private static final byte LIST = 6;
+	private static final byte OBJECT = 7;
+
+	private static Logger log = LogManager.getFormatterLogger("CoFHWorld");
+
+	private final File file;
+	private final HashMap<String, Entry> entries = new HashMap<>();
+	private boolean dirty;
+
+	public ParsedConfigCache(File file) {
+
+		this.file = file;
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				dirty = true;
+				return;
+			}
+			for (int i = in.readInt(); i > 0; --i) {
+				Entry entry = new Entry(in);
+				entries.put(entry.paths[0], entry);
+			}
+		} catch (IOException e) {
+			log.warn("Could not read the world generation cache; all files will be parsed.", e);
+			entries.clear();
+			dirty = true;
+		}
+	}
+
+	/**
+	 * @return The cached config for the file, or null if it is not cached or anything it was read from has changed.
+	 */
+	public Config get(File genFile) {
+
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(genFile.getPath());
+		}
+		if (entry == null || !entry.isValid()) {
+			return null;
+		}
+		if (entry.touched) {
+			synchronized (this) {
+				dirty = true;
+			}
+		}
+		try {
+			@SuppressWarnings ("unchecked")
+			Map<String, Object> root = (Map<String, Object>) read(new DataInputStream(new ByteArrayInputStream(entry.data)));
+			return ConfigValueFactory.fromMap(root, "cached " + genFile.getName()).toConfig();
+		} catch (IOException | ClassCastException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param included The files included while parsing, other than the file itself.
+	 */
+	public void put(File genFile, List<File> included, Config config) {
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+			DataOutputStream out = new DataOutputStream(bytes);
+			write(out, config.root().unwrapped());
+			out.flush();
+
+			File[] files = new File[included.size() + 1];
+			files[0] = genFile;
+			for (int i = 0; i < included.size(); ++i) {
+				files[i + 1] = included.get(i);
+			}
+			Entry entry = new Entry(files, bytes.toByteArray());
+			synchronized (this) {
+				entries.put(genFile.getPath(), entry);
+				dirty = true;
+			}
+		} catch (IOException e) {
+			log.debug("Could not cache %s: %s", genFile, e.getMessage());
+		}
+	}
+
+	/**
+	 * Drops the entries of files that are no longer read.
+	 */
+	public synchronized void retain(Collection<File> genFiles) {
+
+		HashSet<String> paths = new HashSet<>();
+		for (File genFile : genFiles) {
+			paths.add(genFile.getPath());
+		}
+		dirty |= entries.keySet().retainAll(paths);
+	}
+
+	public synchronized void save() {
+
+		if (!dirty) {
+			return;
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(entries.size());
+			for (Entry entry : entries.values()) {
+				entry.write(out);
+			}
+		} catch (IOException e) {
+			log.warn("Could not write the world generation cache.", e);
+			return;
+		}
+		if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+			log.warn("Could not replace the world generation cache.");
+			return;
+		}
+		dirty = false;
+	}
+
+	/* HELPERS */
+	private static long hash(File file) throws IOException {
+
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+			long h = 0;
+			for (int i = 0; i < 8; ++i) {
+				h = h << 8 | digest[i] & 0xFF;
+			}
+			return h;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static void write(DataOutputStream out, Object value) throws IOException {
+
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			out.writeByte(LIST);
+			out.writeInt(list.size());
+			for (Object element : list) {
+				write(out, element);
+			}
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeByte(OBJECT);
+			out.writeInt(map.size());
+			for (Map.Entry<?, ?> e : map.entrySet()) {
+				writeString(out, (String) e.getKey());
+				write(out, e.getValue());
+			}
+		} else {
+			throw new IOException("Unsupported value " + value.getClass().getName());
+		}
+	}
+
+	private static Object read(DataInputStream in) throws IOException {
+
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case BOOLEAN:
+				return in.readBoolean();
+			case INT:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case STRING:
+				return readString(in);
+			case LIST: {
+				int size = in.readInt();
+				ArrayList<Object> list = new ArrayList<>(size);
+				for (int i = 0; i < size; ++i) {
+					list.add(read(in));
+				}
+				return list;
+			}
+			case OBJECT: {
+				int size = in.readInt();
+				LinkedHashMap<String, Object> map = new LinkedHashMap<>(size * 2);
+				for (int i = 0; i < size; ++i) {
+					String key = readString(in);
+					map.put(key, read(in));
+				}
+				return map;
+			}
+			default:
+				throw new IOException("Invalid value type " + type);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static class Entry {
+
+		final String[] paths;
+		final long[] sizes;
+		final long[] modified;
+		final long[] hashes;
+		final byte[] data;
+		boolean touched;
+
+		Entry(File[] files, byte[] data) throws IOException {
+
+			int n = files.length;
+			paths = new String[n];
+			sizes = new long[n];
+			modified = new long[n];
+			hashes = new long[n];
+			for (int i = 0; i < n; ++i) {
+				File f = files[i];
+				paths[i] = f.getPath();
+				if (f.exists()) {
+					sizes[i] = f.length();
+					modified[i] = f.lastModified();
+					hashes[i] = hash(f);
+				} else {
+					sizes[i] = -1;
+				}
+			}
+			this.data = data;
+		}
+
+		Entry(DataInputStream in) throws IOException {
+
+			int n = in.readInt();
+			paths = new String[n];
+			sizes = new long[n];
+			modified = new long[n];
+			hashes = new long[n];
+			for (int i = 0; i < n; ++i) {
+				paths[i] = readString(in);
+				sizes[i] = in.readLong();
+				modified[i] = in.readLong();
+				hashes[i] = in.readLong();
+			}
+			data = new byte[in.readInt()];
+			in.readFully(data);
+		}
+
+		void write(DataOutputStream out) throws IOException {
+
+			out.writeInt(paths.length);
+			for (int i = 0; i < paths.length; ++i) {
+				writeString(out, paths[i]);
+				out.writeLong(sizes[i]);
+				out.writeLong(modified[i]);
+				out.writeLong(hashes[i]);
+			}
+			out.writeInt(data.length);
+			out.write(data);
+		}
+
+		boolean isValid() {
+
+			for (int i = 0; i < paths.length; ++i) {
+				File f = new File(paths[i]);
+				if (!f.exists()) {
+					if (sizes[i] != -1) {
+						return false;
+					}
+					continue;
+				}
+				if (f.length() != sizes[i]) {
+					return false;
+				}
+				if (f.lastModified() != modified[i]) {
+					try {
+						if (hash(f) != hashes[i]) {
+							return false;
+						}
+					} catch (IOException e) {
+						return false;
+					}
+					modified[i] = f.lastModified();
+					touched = true;
+				}
+			}
+			return true;
+		}
+	}
+
+}
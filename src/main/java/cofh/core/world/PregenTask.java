@@ -0,0 +1,364 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import gnu.trove.list.array.TLongArrayList;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.gen.ChunkProviderServer;
+import net.minecraftforge.common.DimensionManager;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Pre-generates a rectangle of chunks in one dimension.
+ *
+ * Chunks are walked one region file (32x32 chunks) at a time, spiralling outwards over the regions from the center of the area, and row by row inside a
+ * region. Only the current and the previous row stay loaded, which is enough for every chunk of the region to be populated; older rows are queued for
+ * unloading (and saving) straight away.
+ *
+ * Chunks that already exist are skipped without being loaded: the header of each region file is read (see {@link RegionFileIndex}) as the walk enters it.
+ * Generating a chunk also loads its neighbours that already exist, so chunks along the edge of a region, or along the edge of what had been explored before,
+ * are populated together with the chunks generated next to them.
+ *
+ * The walk position is saved with the world, so a pre-generation survives restarts and can be paused and resumed. On resume, the rows that were loaded at
+ * the position are loaded again before the walk continues.
+ */
+public class PregenTask {
+
+	private static final int REGION_SHIFT = RegionFileIndex.REGION_SHIFT;
+
+	public final int dimension;
+	public final int xStart, zStart, xEnd, zEnd;
+
+	private final int regionXStart, regionZStart, regionXEnd, regionZEnd;
+	private final int centerX, centerZ;
+
+	/* spiral over the regions, relative to the center region */
+	private int spiralX, spiralZ, spiralDX = 0, spiralDZ = -1;
+	private int regionsLeft;
+
+	/* position inside the current region */
+	private int minX, minZ, maxX, maxZ;
+	private int x, z;
+	private long[] existing;
+	private RegionFileIndex index;
+
+	private long total, done, generated;
+	private boolean paused;
+
+	private long elapsed;
+	private long runningSince;
+
+	/* set when loaded from disk, until the rows loaded before the restart are loaded again */
+	private boolean restoring;
+
+	private TLongArrayList previousRow = new TLongArrayList(32);
+	private TLongArrayList currentRow = new TLongArrayList(32);
+
+	public PregenTask(int dim, int xS, int zS, int xL, int zL) {
+
+		dimension = dim;
+		xStart = Math.min(xS, xL);
+		zStart = Math.min(zS, zL);
+		xEnd = Math.max(xS, xL);
+		zEnd = Math.max(zS, zL);
+
+		regionXStart = xStart >> REGION_SHIFT;
+		regionZStart = zStart >> REGION_SHIFT;
+		regionXEnd = xEnd >> REGION_SHIFT;
+		regionZEnd = zEnd >> REGION_SHIFT;
+		centerX = (regionXStart + regionXEnd) >> 1;
+		centerZ = (regionZStart + regionZEnd) >> 1;
+
+		total = (long) (xEnd - xStart + 1) * (zEnd - zStart + 1);
+		regionsLeft = (regionXEnd - regionXStart + 1) * (regionZEnd - regionZStart + 1);
+		enterRegion();
+	}
+
+	/**
+	 * Pre-generates the next chunk.
+	 *
+	 * @return FALSE if the chunk already existed, and no generation took place.
+	 */
+	public boolean next(WorldServer world) {
+
+		if (isFinished()) {
+			return false;
+		}
+		if (runningSince == 0) {
+			runningSince = System.nanoTime();
+		}
+		if (restoring) {
+			restoring = false;
+			restoreRows(world);
+		}
+		if (existing == null) {
+			if (index == null) {
+				index = new RegionFileIndex(world);
+			}
+			existing = index.getRegion(x >> REGION_SHIFT, z >> REGION_SHIFT);
+		}
+		boolean gen = false;
+		if (!RegionFileIndex.isSet(existing, x, z) && world.getChunkProvider().getLoadedChunk(x, z) == null) {
+			world.getChunkFromChunkCoords(x, z);
+			currentRow.add(GenJournal.pack(x, z));
+			touchNeighbours(world);
+			++generated;
+			gen = true;
+		}
+		++done;
+		advance(world);
+		return gen;
+	}
+
+	public boolean isFinished() {
+
+		return done >= total;
+	}
+
+	public boolean isPaused() {
+
+		return paused;
+	}
+
+	public void setPaused(boolean paused) {
+
+		if (paused && runningSince != 0) {
+			elapsed += System.nanoTime() - runningSince;
+			runningSince = 0;
+		}
+		this.paused = paused;
+	}
+
+	public long getTotal() {
+
+		return total;
+	}
+
+	public long getDone() {
+
+		return done;
+	}
+
+	public long getGenerated() {
+
+		return generated;
+	}
+
+	/**
+	 * @return The number of chunks walked per second since the task was started, excluding the time it was paused.
+	 */
+	public double getRate() {
+
+		long time = elapsed + (runningSince == 0 ? 0 : System.nanoTime() - runningSince);
+		return time <= 0 ? 0 : done * 1.0E9D / time;
+	}
+
+	/**
+	 * @return The estimated number of seconds until the task finishes, or -1 if unknown.
+	 */
+	public long getEta() {
+
+		double rate = getRate();
+		return rate <= 0 ? -1 : (long) ((total - done) / rate);
+	}
+
+	/**
+	 * Queues every chunk this task still holds loaded for unloading.
+	 */
+	public void release(WorldServer world) {
+
+		unload(world, previousRow);
+		unload(world, currentRow);
+	}
+
+	/* SAVING */
+	public static File getFile(int dim) {
+
+		return new File(DimensionManager.getCurrentSaveRootDirectory(), "cofh/worldgen/DIM" + dim + ".pregen");
+	}
+
+	public void save() {
+
+		NBTTagCompound tag = new NBTTagCompound();
+		tag.setIntArray("Area", new int[] { xStart, zStart, xEnd, zEnd });
+		tag.setIntArray("Spiral", new int[] { spiralX, spiralZ, spiralDX, spiralDZ, regionsLeft });
+		tag.setIntArray("Pos", new int[] { x, z });
+		tag.setLong("Done", done);
+		tag.setLong("Generated", generated);
+		tag.setLong("Elapsed", elapsed + (runningSince == 0 ? 0 : System.nanoTime() - runningSince));
+		tag.setBoolean("Paused", paused);
+
+		File file = getFile(dimension);
+		try {
+			file.getParentFile().mkdirs();
+			CompressedStreamTools.safeWrite(tag, file);
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not save the pre-generation progress for dimension " + dimension + ".", e);
+		}
+	}
+
+	public static PregenTask load(int dim) {
+
+		File file = getFile(dim);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			NBTTagCompound tag = CompressedStreamTools.read(file);
+			int[] area = tag.getIntArray("Area");
+			int[] spiral = tag.getIntArray("Spiral");
+			int[] pos = tag.getIntArray("Pos");
+			if (area.length != 4 || spiral.length != 5 || pos.length != 2) {
+				throw new IOException("Malformed pre-generation progress.");
+			}
+			PregenTask task = new PregenTask(dim, area[0], area[1], area[2], area[3]);
+			task.spiralX = spiral[0];
+			task.spiralZ = spiral[1];
+			task.spiralDX = spiral[2];
+			task.spiralDZ = spiral[3];
+			task.regionsLeft = spiral[4];
+			task.enterRegion();
+			task.x = pos[0];
+			task.z = pos[1];
+			task.done = tag.getLong("Done");
+			task.generated = tag.getLong("Generated");
+			task.elapsed = tag.getLong("Elapsed");
+			task.paused = tag.getBoolean("Paused");
+			task.restoring = true;
+			return task;
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not load the pre-generation progress for dimension " + dim + ".", e);
+			return null;
+		}
+	}
+
+	public static void delete(int dim) {
+
+		File file = getFile(dim);
+		if (file.exists() && !file.delete()) {
+			CoFHCore.LOG.error("Could not delete the pre-generation progress for dimension " + dim + ".");
+		}
+	}
+
+	/* HELPERS */
+	private void advance(WorldServer world) {
+
+		if (++x <= maxX) {
+			return;
+		}
+		x = minX;
+		unload(world, previousRow);
+		TLongArrayList t = previousRow;
+		previousRow = currentRow;
+		currentRow = t;
+
+		if (++z <= maxZ) {
+			return;
+		}
+		release(world);
+		if (--regionsLeft > 0) {
+			nextRegion();
+		}
+	}
+
+	private void nextRegion() {
+
+		int rX, rZ;
+		do {
+			if (spiralX == spiralZ || spiralX < 0 && spiralX == -spiralZ || spiralX > 0 && spiralX == 1 - spiralZ) {
+				int t = spiralDX;
+				spiralDX = -spiralDZ;
+				spiralDZ = t;
+			}
+			spiralX += spiralDX;
+			spiralZ += spiralDZ;
+			rX = centerX + spiralX;
+			rZ = centerZ + spiralZ;
+		} while (rX < regionXStart || rX > regionXEnd || rZ < regionZStart || rZ > regionZEnd);
+
+		enterRegion();
+	}
+
+	private void enterRegion() {
+
+		int rX = centerX + spiralX;
+		int rZ = centerZ + spiralZ;
+		minX = Math.max(xStart, rX << REGION_SHIFT);
+		minZ = Math.max(zStart, rZ << REGION_SHIFT);
+		maxX = Math.min(xEnd, (rX << REGION_SHIFT) + (1 << REGION_SHIFT) - 1);
+		maxZ = Math.min(zEnd, (rZ << REGION_SHIFT) + (1 << REGION_SHIFT) - 1);
+		x = minX;
+		z = minZ;
+		existing = null;
+	}
+
+	/**
+	 * Loads the existing neighbours of the chunk just generated, so the 2x2 groups it is part of are all loaded at once. This covers chunks across the edge
+	 * of the region, and chunks that existed before but were never populated because they were at the edge of what had been explored.
+	 */
+	private void touchNeighbours(WorldServer world) {
+
+		for (int dZ = -1; dZ <= 1; ++dZ) {
+			for (int dX = -1; dX <= 1; ++dX) {
+				if (dX != 0 || dZ != 0) {
+					touch(world, x + dX, z + dZ, currentRow);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads what the walk had loaded before the task was saved: the previous row, and the current row up to the position.
+	 */
+	private void restoreRows(WorldServer world) {
+
+		if (z > minZ) {
+			for (int cX = minX; cX <= maxX; ++cX) {
+				touch(world, cX, z - 1, previousRow);
+			}
+		}
+		for (int cX = minX; cX < x; ++cX) {
+			touch(world, cX, z, currentRow);
+		}
+	}
+
+	/**
+	 * Loads a chunk if it already exists and records it for unloading with the given row.
+	 */
+	private void touch(WorldServer world, int cX, int cZ, TLongArrayList row) {
+
+		if (cX < xStart || cX > xEnd || cZ < zStart || cZ > zEnd) {
+			return;
+		}
+		ChunkProviderServer provider = world.getChunkProvider();
+		/* getLoadedChunk cancels a queued unload, so a loaded chunk is recorded again as well */
+		if (provider.getLoadedChunk(cX, cZ) == null) {
+			if (!provider.isChunkGeneratedAt(cX, cZ)) {
+				return;
+			}
+			provider.provideChunk(cX, cZ);
+		}
+		row.add(GenJournal.pack(cX, cZ));
+	}
+
+	private static void unload(WorldServer world, TLongArrayList chunks) {
+
+		ChunkProviderServer provider = world.getChunkProvider();
+		for (int i = 0, e = chunks.size(); i < e; ++i) {
+			long key = chunks.getQuick(i);
+			int cX = GenJournal.unpackX(key), cZ = GenJournal.unpackZ(key);
+			if (!world.getPlayerChunkMap().contains(cX, cZ)) {
+				Chunk chunk = provider.getLoadedChunk(cX, cZ);
+				if (chunk != null) {
+					provider.unload(chunk);
+				}
+			}
+		}
+		chunks.resetQuick();
+	}
+
+}
@@ -0,0 +1,167 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.storage.AnvilChunkLoader;
+import net.minecraft.world.chunk.storage.IChunkLoader;
+import net.minecraftforge.fml.relauncher.ReflectionHelper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * Backpressure for pre-generation.
+ *
+ * Pre-generation slows down to one chunk per tick once heap occupancy, the number of loaded chunks or the number of chunks waiting to be written to disk
+ * passes {@link #SLOW_FRACTION} of its limit, and stops entirely once a limit is reached. Heap occupancy is read from the largest heap pool after its last
+ * collection, so garbage that has not been collected yet does not count.
+ */
+public class PregenThrottle {
+
+	public enum State {
+		NONE, SLOW, STOP
+	}
+
+	public static final double SLOW_FRACTION = 0.8D;
+
+	private static double maxHeap = 0.85D;
+	private static int maxLoadedChunks = 8192;
+	private static int maxPendingSaves = 2048;
+
+	private static MemoryPoolMXBean heapPool;
+	private static Field pendingSaves;
+
+	private static TIntObjectHashMap<State> states = new TIntObjectHashMap<>();
+	private static TIntObjectHashMap<ITextComponent> reasons = new TIntObjectHashMap<>();
+
+	private PregenThrottle() {
+
+	}
+
+	public static void initialize() {
+
+		String category = "World.Pregen";
+		String comment;
+
+		comment = "Pre-generation stops while the heap is fuller than this percentage after garbage collection, and slows down when getting close.";
+		maxHeap = CoFHCore.CONFIG_CORE.getConfiguration().getInt("MaxHeapUsage", category, 85, 10, 100, comment) / 100.0D;
+
+		comment = "Pre-generation stops while a dimension has more chunks than this loaded, and slows down when getting close.";
+		maxLoadedChunks = CoFHCore.CONFIG_CORE.getConfiguration().getInt("MaxLoadedChunks", category, maxLoadedChunks, 256, 1000000, comment);
+
+		comment = "Pre-generation stops while a dimension has more chunks than this waiting to be saved to disk, and slows down when getting close.";
+		maxPendingSaves = CoFHCore.CONFIG_CORE.getConfiguration().getInt("MaxPendingSaves", category, maxPendingSaves, 64, 1000000, comment);
+
+		long largest = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > largest) {
+				largest = pool.getUsage().getMax();
+				heapPool = pool;
+			}
+		}
+		try {
+			pendingSaves = ReflectionHelper.findField(AnvilChunkLoader.class, "field_75828_a", "chunksToRemove");
+		} catch (Throwable t) {
+			CoFHCore.LOG.warn("Could not access the chunk save queue; pre-generation will not be throttled on pending saves.");
+		}
+	}
+
+	/**
+	 * Re-evaluates the throttle for a dimension. Changes of state are logged.
+	 */
+	public static State update(WorldServer world) {
+
+		State next = State.NONE;
+		String why = null;
+		ITextComponent reason = null;
+
+		double heap = getHeapUsage();
+		if (heap >= maxHeap * SLOW_FRACTION) {
+			next = heap >= maxHeap ? State.STOP : State.SLOW;
+			why = String.format("heap usage is %d%% (limit %d%%)", (int) (heap * 100), (int) (maxHeap * 100));
+			reason = new TextComponentTranslation("chat.cofh.command.pregen.throttled.heap", (int) (heap * 100), (int) (maxHeap * 100));
+		}
+		int loaded = world.getChunkProvider().getLoadedChunkCount();
+		if (loaded >= maxLoadedChunks * SLOW_FRACTION) {
+			State s = loaded >= maxLoadedChunks ? State.STOP : State.SLOW;
+			if (s.ordinal() > next.ordinal()) {
+				next = s;
+				why = loaded + " chunks are loaded (limit " + maxLoadedChunks + ")";
+				reason = new TextComponentTranslation("chat.cofh.command.pregen.throttled.loaded", loaded, maxLoadedChunks);
+			}
+		}
+		int pending = getPendingSaves(world);
+		if (pending >= maxPendingSaves * SLOW_FRACTION) {
+			State s = pending >= maxPendingSaves ? State.STOP : State.SLOW;
+			if (s.ordinal() > next.ordinal()) {
+				next = s;
+				why = pending + " chunks are waiting to be saved (limit " + maxPendingSaves + ")";
+				reason = new TextComponentTranslation("chat.cofh.command.pregen.throttled.saves", pending, maxPendingSaves);
+			}
+		}
+		int dim = world.provider.getDimension();
+		if (next != getState(dim)) {
+			if (next == State.NONE) {
+				CoFHCore.LOG.info("Pre-generation is no longer throttled in dimension " + dim + ".");
+			} else {
+				CoFHCore.LOG.info("Pre-generation " + (next == State.STOP ? "paused" : "slowed down") + " in dimension " + dim + ": " + why + ".");
+			}
+			states.put(dim, next);
+		}
+		reasons.put(dim, reason);
+		return next;
+	}
+
+	public static State getState(int dim) {
+
+		State state = states.get(dim);
+		return state == null ? State.NONE : state;
+	}
+
+	/**
+	 * @return Why pre-generation is throttled in the dimension, for chat; null if it is not.
+	 */
+	public static ITextComponent getReason(int dim) {
+
+		return reasons.get(dim);
+	}
+
+	/* HELPERS */
+	private static double getHeapUsage() {
+
+		if (heapPool != null) {
+			MemoryUsage usage = heapPool.getCollectionUsage();
+			if (usage != null && usage.getMax() > 0) {
+				return usage.getUsed() / (double) usage.getMax();
+			}
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return (runtime.totalMemory() - runtime.freeMemory()) / (double) runtime.maxMemory();
+	}
+
+	private static int getPendingSaves(WorldServer world) {
+
+		if (pendingSaves == null) {
+			return 0;
+		}
+		IChunkLoader loader = world.getChunkProvider().chunkLoader;
+		if (!(loader instanceof AnvilChunkLoader)) {
+			return 0;
+		}
+		try {
+			return ((Map<?, ?>) pendingSaves.get(loader)).size();
+		} catch (Throwable t) {
+			CoFHCore.LOG.warn("Could not read the chunk save queue; pre-generation will not be throttled on pending saves.");
+			pendingSaves = null;
+			return 0;
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import net.minecraft.world.WorldServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Answers whether chunks exist on disk by reading the headers of a dimension's region (.mca) files, without loading the chunks.
+ *
+ * The 4 KiB offset table at the start of a region file is read and reduced to a bitmap; a chunk exists if its offset is non-zero. Unlike going through the
+ * chunk loader, missing region files are not created and no region file is held open.
+ *
+ * Only the header is consulted: a chunk that was saved before it was populated (e.g. the last row of an interrupted pre-generation) still counts as existing.
+ */
+public class RegionFileIndex {
+
+	public static final int REGION_SHIFT = 5;
+	private static final int SECTOR_TABLE_SIZE = 4096;
+
+	private static final long[] EMPTY = new long[16];
+
+	private final File regionDir;
+
+	private int cachedX, cachedZ;
+	private long[] cached;
+
+	public RegionFileIndex(WorldServer world) {
+
+		regionDir = new File(world.getChunkSaveLocation(), "region");
+	}
+
+	public boolean exists(int chunkX, int chunkZ) {
+
+		int regionX = chunkX >> REGION_SHIFT;
+		int regionZ = chunkZ >> REGION_SHIFT;
+		if (cached == null || cachedX != regionX || cachedZ != regionZ) {
+			cached = getRegion(regionX, regionZ);
+			cachedX = regionX;
+			cachedZ = regionZ;
+		}
+		return isSet(cached, chunkX, chunkZ);
+	}
+
+	/**
+	 * Counts the chunks in an area that exist on disk.
+	 */
+	public long count(int xS, int zS, int xL, int zL) {
+
+		long count = 0;
+		for (int rX = xS >> REGION_SHIFT; rX <= xL >> REGION_SHIFT; ++rX) {
+			for (int rZ = zS >> REGION_SHIFT; rZ <= zL >> REGION_SHIFT; ++rZ) {
+				long[] region = getRegion(rX, rZ);
+				if (region == EMPTY) {
+					continue;
+				}
+				int minX = Math.max(xS, rX << REGION_SHIFT), maxX = Math.min(xL, (rX << REGION_SHIFT) + 31);
+				int minZ = Math.max(zS, rZ << REGION_SHIFT), maxZ = Math.min(zL, (rZ << REGION_SHIFT) + 31);
+				for (int z = minZ; z <= maxZ; ++z) {
+					for (int x = minX; x <= maxX; ++x) {
+						if (isSet(region, x, z)) {
+							++count;
+						}
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the header of a region file.
+	 *
+	 * @return A bitmap of the chunks present in the region, indexed by {@code (z & 31) << 5 | (x & 31)}.
+	 */
+	public long[] getRegion(int regionX, int regionZ) {
+
+		File file = new File(regionDir, "r." + regionX + "." + regionZ + ".mca");
+		if (!file.isFile()) {
+			return EMPTY;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < SECTOR_TABLE_SIZE) {
+				return EMPTY;
+			}
+			/* a plain read rather than a mapping: a mapped buffer keeps the file locked on Windows until it is garbage collected */
+			ByteBuffer offsets = ByteBuffer.allocate(SECTOR_TABLE_SIZE);
+			while (offsets.hasRemaining()) {
+				if (channel.read(offsets, offsets.position()) < 0) {
+					return EMPTY;
+				}
+			}
+			long[] bits = new long[16];
+			for (int i = 0; i < 1024; ++i) {
+				if (offsets.getInt(i << 2) != 0) {
+					bits[i >> 6] |= 1L << i;
+				}
+			}
+			return bits;
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not read the header of region file " + file + ".", e);
+			return EMPTY;
+		}
+	}
+
+	public static boolean isSet(long[] region, int chunkX, int chunkZ) {
+
+		int i = (chunkZ & 31) << 5 | chunkX & 31;
+		return (region[i >> 6] & 1L << i) != 0;
+	}
+
+}
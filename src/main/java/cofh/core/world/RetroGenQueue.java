@@ -0,0 +1,163 @@
+package cofh.core.world;
+
+import cofh.core.world.TickHandlerWorld.RetroChunkCoord;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TObjectProcedure;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.world.World;
+
+import java.util.List;
+
+/**
+ * The retrogen queue of a single dimension.
+ *
+ * Chunks are de-duplicated by their packed coordinates and handed out closest to an online player first. Waiting time counts as distance, so far away chunks
+ * still finish: every {@link #AGING_TICKS} ticks in the queue make a chunk rank as if it were one chunk closer. With no players present, this is FIFO.
+ *
+ * Chunks sit in one of {@link #BUCKETS} FIFO buckets by rank (distance minus age, in chunks) and are polled from the lowest non-empty bucket. Ranks are
+ * refreshed incrementally: each poll re-ranks at most {@link #RESCORE_SLICE} chunks, walking the buckets in a cycle, so the cost of a poll does not grow with
+ * the queue and is charged to the {@link GenScheduler} budget along with the generation it precedes.
+ *
+ * Chunks are stored under their scrambled key ({@link ChunkKeyMap#scramble}), as trove spreads packed coordinates poorly on its own.
+ */
+public class RetroGenQueue {
+
+	public static final int AGING_TICKS = 200;
+	public static final int BUCKETS = 256;
+	public static final int RESCORE_SLICE = 256;
+
+	private final TLongObjectHashMap<RetroChunkCoord> chunks = new TLongObjectHashMap<>(128);
+
+	/* chunks not ranked yet; keys of chunks handed out elsewhere are dropped lazily */
+	private final ChunkKeyQueue incoming = new ChunkKeyQueue();
+	private final ChunkKeyQueue[] buckets = new ChunkKeyQueue[BUCKETS];
+	private int lowest = BUCKETS;
+
+	private int cursor;
+	private int cursorRemaining;
+
+	private int[] playerX = new int[0];
+	private int[] playerZ = new int[0];
+
+	/**
+	 * @return FALSE if the chunk was already queued; the queued entry (and its feature set) is kept.
+	 */
+	public boolean add(RetroChunkCoord chunk, long worldTime) {
+
+		long key = ChunkKeyMap.scramble(chunk.getKey());
+		if (chunks.containsKey(key)) {
+			return false;
+		}
+		chunk.queuedTime = worldTime;
+		chunks.put(key, chunk);
+		incoming.add(key);
+		return true;
+	}
+
+	public RetroChunkCoord poll(World world) {
+
+		if (chunks.isEmpty()) {
+			return null;
+		}
+		rescore(world.playerEntities, world.getTotalWorldTime());
+
+		for (; lowest < BUCKETS; ++lowest) {
+			ChunkKeyQueue bucket = buckets[lowest];
+			while (bucket != null && !bucket.isEmpty()) {
+				RetroChunkCoord chunk = chunks.remove(bucket.poll());
+				if (chunk != null) {
+					return chunk;
+				}
+			}
+		}
+		while (!incoming.isEmpty()) {
+			RetroChunkCoord chunk = chunks.remove(incoming.poll());
+			if (chunk != null) {
+				return chunk;
+			}
+		}
+		return null;
+	}
+
+	public RetroChunkCoord get(long key) {
+
+		return chunks.get(ChunkKeyMap.scramble(key));
+	}
+
+	public boolean contains(long key) {
+
+		return chunks.containsKey(ChunkKeyMap.scramble(key));
+	}
+
+	public int size() {
+
+		return chunks.size();
+	}
+
+	public boolean isEmpty() {
+
+		return chunks.isEmpty();
+	}
+
+	public boolean forEach(TObjectProcedure<RetroChunkCoord> procedure) {
+
+		return chunks.forEachValue(procedure);
+	}
+
+	/* HELPERS */
+	private void rescore(List<EntityPlayer> players, long time) {
+
+		int p = players.size();
+		if (playerX.length < p) {
+			playerX = new int[p];
+			playerZ = new int[p];
+		}
+		for (int i = 0; i < p; ++i) {
+			EntityPlayer player = players.get(i);
+			playerX[i] = player.chunkCoordX;
+			playerZ[i] = player.chunkCoordZ;
+		}
+		int budget = RESCORE_SLICE;
+		while (budget > 0 && !incoming.isEmpty()) {
+			place(incoming.poll(), p, time);
+			--budget;
+		}
+		while (budget > 0) {
+			/* moving on to the next bucket costs a unit as well, so a small queue does not spin through every bucket on each poll */
+			--budget;
+			ChunkKeyQueue bucket = buckets[cursor];
+			if (bucket == null || cursorRemaining <= 0 || bucket.isEmpty()) {
+				cursor = (cursor + 1) % BUCKETS;
+				cursorRemaining = buckets[cursor] == null ? 0 : buckets[cursor].size();
+				continue;
+			}
+			/* only the chunks that were in the bucket when the cursor got there; re-ranked ones are appended behind them */
+			--cursorRemaining;
+			place(bucket.poll(), p, time);
+		}
+	}
+
+	private void place(long key, int p, long time) {
+
+		RetroChunkCoord chunk = chunks.get(key);
+		if (chunk == null) {
+			return;
+		}
+		long distance = 0;
+		if (p > 0) {
+			distance = Long.MAX_VALUE;
+			for (int j = 0; j < p; ++j) {
+				long d = Math.max(Math.abs((long) chunk.chunkX - playerX[j]), Math.abs((long) chunk.chunkZ - playerZ[j]));
+				distance = Math.min(distance, d);
+			}
+		}
+		int rank = (int) Math.max(0, Math.min(BUCKETS - 1, distance - (time - chunk.queuedTime) / AGING_TICKS));
+		ChunkKeyQueue bucket = buckets[rank];
+		if (bucket == null) {
+			buckets[rank] = bucket = new ChunkKeyQueue();
+		}
+		bucket.add(key);
+		lowest = Math.min(lowest, rank);
+	}
+
+}
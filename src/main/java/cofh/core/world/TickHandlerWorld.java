@@ -1,30 +1,54 @@
 package cofh.core.world;
 
 import cofh.CoFHCore;
-import cofh.lib.util.ChunkCoord;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.set.hash.THashSet;
-import net.minecraft.nbt.NBTTagList;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.WorldTickEvent;
 import net.minecraftforge.fml.relauncher.Side;
 
-import java.util.ArrayDeque;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class TickHandlerWorld {
 
 	public static TickHandlerWorld instance = new TickHandlerWorld();
 
-	public static TIntObjectHashMap<ArrayDeque<RetroChunkCoord>> chunksToGen = new TIntObjectHashMap<>();
-	public static TIntObjectHashMap<ArrayDeque<ChunkCoord>> chunksToPreGen = new TIntObjectHashMap<>();
+	public static TIntObjectHashMap<RetroGenQueue> chunksToGen = new TIntObjectHashMap<>();
+	public static TIntObjectHashMap<PregenTask> chunksToPreGen = new TIntObjectHashMap<>();
 
-	// FIXME: put adding to these behind a function so we can remove the tick handler when there's nothing to do
 	// size of the maps indicates how many dimensions are needing to gen/pregen, and will be 0 when no work is required
 
+	/* Retrogen chunks restored from the journal; loading them re-queues them with the feature list saved in the chunk. */
+	private static TIntObjectHashMap<ChunkKeyQueue> chunksToReload = new TIntObjectHashMap<>();
+	/* Chunks that were only loaded to finish a restored retrogen, and are unloaded again afterwards. */
+	private static TIntObjectHashMap<ChunkKeyMap> chunksToUnload = new TIntObjectHashMap<>();
+	private static TIntObjectHashMap<GenJournal> journals = new TIntObjectHashMap<>();
+	/* Chunks retrogenerated this tick. RetroGen may load them from disk, and that load re-requests RetroGen with the bits saved before it ran. */
+	private static TIntObjectHashMap<ChunkKeyMap> retroGenerated = new TIntObjectHashMap<>();
+
+	/* Retrogen requests from chunk loads, which may happen off the server thread; drained into chunksToGen by the server thread. */
+	private static ConcurrentHashMap<Integer, ConcurrentLinkedQueue<RetroChunkCoord>> retroGenInbox = new ConcurrentHashMap<>();
+
 	private static byte pregenC, retroC;
+	/* features are seeded per chunk and feature by WorldHandler; this only seeds the rest of retrogen */
+	private static FeatureRandom retroRandom = new FeatureRandom();
+
+	@SubscribeEvent
+	public void tickStart(ServerTickEvent event) {
+
+		if (event.phase == Phase.START) {
+			GenScheduler.startTick();
+			WorldGenReloader.tick();
+		}
+	}
 
 	@SubscribeEvent
 	public void tickEnd(WorldTickEvent event) {
@@ -36,72 +60,401 @@ public class TickHandlerWorld {
 		int dim = world.provider.getDimension();
 
 		if (event.phase == Phase.END) {
-			ArrayDeque<RetroChunkCoord> chunks = chunksToGen.get(dim);
+			DeferredWrites.applyReady(world);
+			drainRetroGenInbox(world, dim);
+			RetroGenQueue chunks = chunksToGen.get(dim);
+			ChunkKeyQueue reload = chunksToReload.get(dim);
 
 			if (chunks != null && chunks.size() > 0) {
-				RetroChunkCoord r = chunks.pollFirst();
-				ChunkCoord c = r.coord;
-				if (retroC++ == 0 || chunks.size() < 3) {
-					CoFHCore.LOG.info("RetroGening " + c.toString() + ".");
-				} else {
-					CoFHCore.LOG.debug("RetroGening " + c.toString() + ".");
-				}
-				retroC &= 31;
-				long worldSeed = world.getSeed();
-				Random rand = new Random(worldSeed);
-				long xSeed = rand.nextLong() >> 2 + 1L;
-				long zSeed = rand.nextLong() >> 2 + 1L;
-				rand.setSeed(xSeed * c.chunkX + zSeed * c.chunkZ ^ worldSeed);
-				WorldHandler.instance.generateWorld(rand, r, world, false);
-				chunksToGen.put(dim, chunks);
-			} else if (chunks != null) {
+				long batchStart = GenScheduler.startBatch();
+				do {
+					retroGen(world, chunks.poll(world), chunks.size());
+					GenScheduler.recordRetroGen(dim);
+				} while (chunks.size() > 0 && GenScheduler.hasTime(batchStart));
+				GenScheduler.endBatch(batchStart);
+				/* drop the requests their own loads made before forgetting them */
+				drainRetroGenInbox(world, dim);
+				retroGenerated.get(dim).clear();
+			} else if (reload != null && reload.size() > 0) {
+				long batchStart = GenScheduler.startBatch();
+				do {
+					reloadChunk(world, reload.poll());
+				} while (reload.size() > 0 && getRetroGenQueueSize(dim) == 0 && GenScheduler.hasTime(batchStart));
+				GenScheduler.endBatch(batchStart);
+			} else {
 				chunksToGen.remove(dim);
+				chunksToReload.remove(dim);
 			}
 		} else {
-			ArrayDeque<ChunkCoord> chunks = chunksToPreGen.get(dim);
+			PregenTask task = chunksToPreGen.get(dim);
 
-			if (chunks != null && chunks.size() > 0) {
-				ChunkCoord c = chunks.pollFirst();
-				if (pregenC++ == 0 || chunks.size() < 5) {
-					CoFHCore.LOG.info("PreGening " + c.toString() + ".");
-				} else {
-					CoFHCore.LOG.debug("PreGening " + c.toString() + ".");
+			if (task != null && !task.isPaused()) {
+				PregenThrottle.State throttle = PregenThrottle.update((WorldServer) world);
+				if (throttle != PregenThrottle.State.STOP) {
+					long batchStart = GenScheduler.startBatch();
+					do {
+						preGen((WorldServer) world, task);
+					} while (throttle == PregenThrottle.State.NONE && !task.isFinished() && GenScheduler.hasTime(batchStart));
+					GenScheduler.endBatch(batchStart);
+				}
+
+				if (task.isFinished()) {
+					task.release((WorldServer) world);
+					chunksToPreGen.remove(dim);
+					PregenTask.delete(dim);
+					CoFHCore.LOG.info("Finished pre-generating " + task.getTotal() + " chunks (" + task.getGenerated() + " new) in dimension " + dim + ".");
 				}
-				pregenC &= 31;
-				world.getChunkFromChunkCoords(c.chunkX, c.chunkZ);
-			} else if (chunks != null) {
-				chunksToPreGen.remove(dim);
 			}
 		}
+		GenJournal journal = journals.get(dim);
+		if (journal != null) {
+			journal.flush();
+		}
 	}
 
-	public static class RetroChunkCoord {
+	@SubscribeEvent
+	public void worldLoad(WorldEvent.Load event) {
 
-		private static final THashSet<String> emptySet = new THashSet<>(0);
-		public final ChunkCoord coord;
-		public final THashSet<String> generatedFeatures;
+		World world = event.getWorld();
+		if (world.isRemote) {
+			return;
+		}
+		int dim = world.provider.getDimension();
+		GenJournal journal = new GenJournal(dim);
+		TLongArrayList retro = new TLongArrayList();
+		TLongArrayList pre = new TLongArrayList();
+		journal.load(retro, pre);
 
-		public RetroChunkCoord(ChunkCoord pos, NBTTagList features) {
+		if (retro.size() > 0) {
+			ChunkKeyQueue chunks = new ChunkKeyQueue(retro.size());
+			for (int i = 0, e = retro.size(); i < e; ++i) {
+				chunks.add(retro.getQuick(i));
+			}
+			chunksToReload.put(dim, chunks);
+		}
+		PregenTask task = PregenTask.load(dim);
+		if (task == null && pre.size() > 0) {
+			/* pregen queued per chunk by an older version; resume it as a task over the same area */
+			int xS = Integer.MAX_VALUE, zS = Integer.MAX_VALUE, xL = Integer.MIN_VALUE, zL = Integer.MIN_VALUE;
+			for (int i = 0, e = pre.size(); i < e; ++i) {
+				long key = pre.getQuick(i);
+				xS = Math.min(xS, GenJournal.unpackX(key));
+				zS = Math.min(zS, GenJournal.unpackZ(key));
+				xL = Math.max(xL, GenJournal.unpackX(key));
+				zL = Math.max(zL, GenJournal.unpackZ(key));
+			}
+			task = new PregenTask(dim, xS, zS, xL, zL);
+			/* the journal is compacted without the pregen records below, so the task must be on disk first */
+			task.save();
+		}
+		if (task != null) {
+			chunksToPreGen.put(dim, task);
+		}
+		pre.resetQuick();
+		journal.compact(retro, pre);
+		journals.put(dim, journal);
+		DeferredWrites.load(dim);
+	}
 
-			coord = pos;
-			if (features == null) {
-				generatedFeatures = emptySet;
-			} else {
-				int i = 0, e = features.tagCount();
-				generatedFeatures = new THashSet<>(e);
-				for (; i < e; ++i) {
-					generatedFeatures.add(features.getStringTagAt(i));
-				}
+	@SubscribeEvent
+	public void worldSave(WorldEvent.Save event) {
+
+		World world = event.getWorld();
+		if (world.isRemote) {
+			return;
+		}
+		int dim = world.provider.getDimension();
+		GenJournal journal = journals.get(dim);
+		if (journal != null && journal.needsCompaction(getRetroGenQueueSize(dim) + getReloadQueueSize(dim))) {
+			compactJournal(dim, journal);
+		}
+		PregenTask task = chunksToPreGen.get(dim);
+		if (task != null) {
+			task.save();
+		}
+		DeferredWrites.save(dim);
+	}
+
+	@SubscribeEvent
+	public void worldUnload(WorldEvent.Unload event) {
+
+		World world = event.getWorld();
+		if (world.isRemote) {
+			return;
+		}
+		int dim = world.provider.getDimension();
+		GenJournal journal = journals.remove(dim);
+		if (journal != null) {
+			compactJournal(dim, journal);
+			journal.close();
+		}
+		PregenTask task = chunksToPreGen.get(dim);
+		if (task != null) {
+			task.save();
+		}
+		DeferredWrites.unload(dim);
+		BoundedWorld.unload(dim);
+		/* Everything is persisted and is restored when the dimension loads again. */
+		chunksToGen.remove(dim);
+		chunksToPreGen.remove(dim);
+		chunksToReload.remove(dim);
+		chunksToUnload.remove(dim);
+		retroGenerated.remove(dim);
+		retroGenInbox.remove(dim);
+	}
+
+	@SubscribeEvent
+	public void chunkLoad(ChunkEvent.Load event) {
+
+		World world = event.getWorld();
+		if (world.isRemote) {
+			return;
+		}
+		Chunk chunk = event.getChunk();
+		DeferredWrites.chunkLoaded(world.provider.getDimension(), chunk.xPosition, chunk.zPosition, chunk.isTerrainPopulated());
+	}
+
+	/**
+	 * Queues a chunk for retrogen. Safe to call from any thread; the request is picked up by the server thread on the next world tick.
+	 */
+	public static void queueRetroGen(int dim, RetroChunkCoord chunk) {
+
+		ConcurrentLinkedQueue<RetroChunkCoord> inbox = retroGenInbox.get(dim);
+		if (inbox == null) {
+			inbox = retroGenInbox.computeIfAbsent(dim, k -> new ConcurrentLinkedQueue<>());
+		}
+		inbox.offer(chunk);
+	}
+
+	/**
+	 * Starts a pregen task. Must be called from the server thread.
+	 *
+	 * @return FALSE if a task is already running in the dimension.
+	 */
+	public static boolean startPreGen(PregenTask task) {
+
+		if (chunksToPreGen.containsKey(task.dimension)) {
+			return false;
+		}
+		chunksToPreGen.put(task.dimension, task);
+		task.save();
+		return true;
+	}
+
+	public static PregenTask getPreGenTask(int dim) {
+
+		return chunksToPreGen.get(dim);
+	}
+
+	public static PregenTask cancelPreGen(WorldServer world) {
+
+		int dim = world.provider.getDimension();
+		PregenTask task = chunksToPreGen.remove(dim);
+		if (task != null) {
+			task.release(world);
+			PregenTask.delete(dim);
+		}
+		return task;
+	}
+
+	/**
+	 * @return The queued RetroGen of a chunk, or null if it is not queued. Must be called from the server thread.
+	 */
+	public static RetroChunkCoord getQueuedRetroGen(World world, int chunkX, int chunkZ) {
+
+		int dim = world.provider.getDimension();
+		drainRetroGenInbox(world, dim);
+		RetroGenQueue chunks = chunksToGen.get(dim);
+		return chunks == null ? null : chunks.get(GenJournal.pack(chunkX, chunkZ));
+	}
+
+	public static int getRetroGenQueueSize(int dim) {
+
+		RetroGenQueue chunks = chunksToGen.get(dim);
+		return chunks == null ? 0 : chunks.size();
+	}
+
+	/**
+	 * @return Every chunk still waiting for RetroGen: queued, requested by a chunk load but not queued yet, or restored from the journal but not reloaded yet.
+	 */
+	public static int getRetroGenPendingSize(int dim) {
+
+		ConcurrentLinkedQueue<RetroChunkCoord> inbox = retroGenInbox.get(dim);
+		return getRetroGenQueueSize(dim) + (inbox == null ? 0 : inbox.size()) + getReloadQueueSize(dim);
+	}
+
+	public static long getPreGenQueueSize(int dim) {
+
+		PregenTask task = chunksToPreGen.get(dim);
+		return task == null ? 0 : task.getTotal() - task.getDone();
+	}
+
+	public static int getReloadQueueSize(int dim) {
+
+		ChunkKeyQueue chunks = chunksToReload.get(dim);
+		return chunks == null ? 0 : chunks.size();
+	}
+
+	/* HELPERS */
+	private static void drainRetroGenInbox(World world, int dim) {
+
+		ConcurrentLinkedQueue<RetroChunkCoord> inbox = retroGenInbox.get(dim);
+		if (inbox == null || inbox.isEmpty()) {
+			return;
+		}
+		RetroGenQueue chunks = chunksToGen.get(dim);
+		if (chunks == null) {
+			chunksToGen.put(dim, chunks = new RetroGenQueue());
+		}
+		ChunkKeyMap generated = retroGenerated.get(dim);
+		long time = world.getTotalWorldTime();
+		for (RetroChunkCoord chunk; (chunk = inbox.poll()) != null; ) {
+			if (generated != null && generated.containsKey(chunk.getKey())) {
+				continue;
+			}
+			if (chunks.add(chunk, time)) {
+				journal(dim, GenJournal.RETRO_ADD, chunk.getKey());
+			}
+		}
+	}
+
+	private static void retroGen(World world, RetroChunkCoord r, int remaining) {
+
+		if (retroC++ == 0 || remaining < 3) {
+			CoFHCore.LOG.info("RetroGening " + r.toString() + ".");
+		} else {
+			CoFHCore.LOG.debug("RetroGening " + r.toString() + ".");
+		}
+		retroC &= 31;
+		int dim = world.provider.getDimension();
+		long key = r.getKey();
+		ChunkKeyMap generated = retroGenerated.get(dim);
+		if (generated == null) {
+			retroGenerated.put(dim, generated = new ChunkKeyMap());
+		}
+		generated.put(key, 1);
+
+		retroRandom.setSeed(FeatureRandom.getChunkSeed(world.getSeed(), r.chunkX, r.chunkZ));
+		WorldHandler.instance.generateWorld(retroRandom, r, world, false);
+
+		journal(dim, GenJournal.RETRO_DONE, key);
+		ChunkKeyMap unload = chunksToUnload.get(dim);
+		if (unload != null && unload.remove(key) != 0) {
+			unloadIfUnwatched(world, r.chunkX, r.chunkZ);
+		}
+	}
+
+	private static void preGen(WorldServer world, PregenTask task) {
+
+		if (task.next(world)) {
+			GenScheduler.recordPreGen(task.dimension);
+			if (pregenC++ == 0) {
+				CoFHCore.LOG.info("PreGening dimension " + task.dimension + ": " + task.getDone() + " of " + task.getTotal() + " chunks.");
+			}
+			pregenC &= 63;
+		}
+	}
+
+	private static void reloadChunk(World world, long key) {
+
+		int dim = world.provider.getDimension();
+		int chunkX = GenJournal.unpackX(key), chunkZ = GenJournal.unpackZ(key);
+		journal(dim, GenJournal.RETRO_DONE, key);
+		if (world.getChunkProvider().getLoadedChunk(chunkX, chunkZ) != null) {
+			/* Already loaded this session, so its load event has already queued it if required. */
+			return;
+		}
+		world.getChunkFromChunkCoords(chunkX, chunkZ);
+		drainRetroGenInbox(world, dim);
+
+		RetroGenQueue chunks = chunksToGen.get(dim);
+		if (chunks != null && chunks.contains(key)) {
+			ChunkKeyMap unload = chunksToUnload.get(dim);
+			if (unload == null) {
+				chunksToUnload.put(dim, unload = new ChunkKeyMap());
+			}
+			unload.put(key, 1);
+		} else {
+			unloadIfUnwatched(world, chunkX, chunkZ);
+		}
+	}
+
+	private static void unloadIfUnwatched(World world, int chunkX, int chunkZ) {
+
+		WorldServer worldServer = (WorldServer) world;
+		if (!worldServer.getPlayerChunkMap().contains(chunkX, chunkZ)) {
+			Chunk chunk = worldServer.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+			if (chunk != null) {
+				worldServer.getChunkProvider().unload(chunk);
 			}
 		}
+	}
+
+	private static void journal(int dim, byte op, long key) {
+
+		GenJournal journal = journals.get(dim);
+		if (journal != null) {
+			journal.append(op, key);
+		}
+	}
+
+	private static void compactJournal(int dim, GenJournal journal) {
+
+		TLongArrayList retro = new TLongArrayList(getRetroGenQueueSize(dim) + getReloadQueueSize(dim));
+
+		RetroGenQueue chunks = chunksToGen.get(dim);
+		if (chunks != null) {
+			chunks.forEach(r -> retro.add(r.getKey()));
+		}
+		ChunkKeyQueue reload = chunksToReload.get(dim);
+		if (reload != null) {
+			reload.forEach(retro::add);
+		}
+		journal.compact(retro, new TLongArrayList(0));
+	}
+
+	public static class RetroChunkCoord {
+
+		private static final long[] NONE = new long[0];
+		public final int chunkX;
+		public final int chunkZ;
+		private final long[] generatedFeatures;
+		long queuedTime;
+
+		/**
+		 * @param features The {@link FeatureDictionary} bitset of the features the chunk has already generated, if any.
+		 */
+		public RetroChunkCoord(int chunkX, int chunkZ, long[] features) {
+
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+			generatedFeatures = features == null ? NONE : features;
+		}
+
+		public long getKey() {
+
+			return GenJournal.pack(chunkX, chunkZ);
+		}
+
+		/**
+		 * @return The {@link FeatureDictionary} bitset of the features the chunk has already generated. Must not be modified.
+		 */
+		public long[] getGeneratedFeatures() {
+
+			return generatedFeatures;
+		}
+
+		public boolean hasFeature(int index) {
+
+			return FeatureDictionary.has(generatedFeatures, index);
+		}
 
 		@Override
 		public boolean equals(Object o) {
 
 			if (o instanceof RetroChunkCoord) {
-				return ((RetroChunkCoord) o).coord.equals(coord);
-			} else if (o instanceof ChunkCoord) {
-				return o.equals(coord);
+				RetroChunkCoord other = (RetroChunkCoord) o;
+				return other.chunkX == chunkX && other.chunkZ == chunkZ;
 			}
 			return false;
 		}
@@ -109,7 +462,13 @@ public class TickHandlerWorld {
 		@Override
 		public int hashCode() {
 
-			return coord.hashCode();
+			return (int) ChunkKeyMap.scramble(getKey());
+		}
+
+		@Override
+		public String toString() {
+
+			return "[" + chunkX + ", " + chunkZ + "]";
 		}
 	}
 
@@ -0,0 +1,186 @@
+package cofh.core.world;
+
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Times every feature generated by {@link WorldHandler}, per dimension and feature name.
+ *
+ * While stopped (the default) the only cost to world generation is a check of {@link #enabled}. Times are kept in a histogram of power of two microsecond
+ * buckets, from which the percentiles are estimated.
+ */
+public class WorldGenProfiler {
+
+	public static final int BUCKETS = 24;
+
+	static boolean enabled = false;
+	private static long startTime;
+	private static long runTime;
+
+	private static TIntObjectHashMap<THashMap<String, Entry>> entries = new TIntObjectHashMap<>();
+
+	private WorldGenProfiler() {
+
+	}
+
+	public static void start() {
+
+		if (!enabled) {
+			startTime = System.nanoTime();
+			enabled = true;
+		}
+	}
+
+	public static void stop() {
+
+		if (enabled) {
+			runTime += System.nanoTime() - startTime;
+			enabled = false;
+		}
+	}
+
+	public static void reset() {
+
+		entries.clear();
+		runTime = 0;
+		startTime = System.nanoTime();
+	}
+
+	public static boolean isEnabled() {
+
+		return enabled;
+	}
+
+	/**
+	 * @return The time spent profiling, in seconds.
+	 */
+	public static double getRunTime() {
+
+		return (runTime + (enabled ? System.nanoTime() - startTime : 0)) * 1.0E-9D;
+	}
+
+	public static void record(int dim, String feature, long nanos, boolean generated) {
+
+		THashMap<String, Entry> map = entries.get(dim);
+		if (map == null) {
+			entries.put(dim, map = new THashMap<>());
+		}
+		Entry entry = map.get(feature);
+		if (entry == null) {
+			map.put(feature, entry = new Entry(dim, feature));
+		}
+		entry.record(nanos, generated);
+	}
+
+	/**
+	 * @param dim The dimension, or {@link Integer#MIN_VALUE} for all dimensions.
+	 * @return The entries, most expensive first.
+	 */
+	public static List<Entry> getEntries(int dim) {
+
+		List<Entry> list = new ArrayList<>();
+		for (int d : entries.keys()) {
+			if (dim == Integer.MIN_VALUE || d == dim) {
+				list.addAll(entries.get(d).values());
+			}
+		}
+		list.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+		return list;
+	}
+
+	public static void writeCsv(File file) throws IOException {
+
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Could not create directory " + dir + ".");
+		}
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			StringBuilder header = new StringBuilder("dimension,feature,calls,generated,skipped,total_ms,avg_us,p50_us,p90_us,p99_us,max_us");
+			for (int i = 0; i < BUCKETS; ++i) {
+				header.append(",lt_").append(1L << i).append("us");
+			}
+			out.println(header);
+			for (Entry e : getEntries(Integer.MIN_VALUE)) {
+				StringBuilder line = new StringBuilder();
+				line.append(e.dimension).append(',').append(quote(e.feature)).append(',').append(e.calls).append(',').append(e.generated).append(',').append(e.calls - e.generated);
+				line.append(String.format(Locale.US, ",%.3f,%.1f,%d,%d,%d,%.1f", e.totalNanos * 1.0E-6D, e.getAverage(), e.getPercentile(0.5D), e.getPercentile(0.9D), e.getPercentile(0.99D), e.maxNanos * 1.0E-3D));
+				for (long count : e.histogram) {
+					line.append(',').append(count);
+				}
+				out.println(line);
+			}
+		}
+	}
+
+	/* HELPERS */
+	private static String quote(String value) {
+
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	public static class Entry {
+
+		public final int dimension;
+		public final String feature;
+
+		public long calls;
+		public long generated;
+		public long totalNanos;
+		public long maxNanos;
+		public final long[] histogram = new long[BUCKETS];
+
+		Entry(int dim, String name) {
+
+			dimension = dim;
+			feature = name;
+		}
+
+		void record(long nanos, boolean gen) {
+
+			++calls;
+			if (gen) {
+				++generated;
+			}
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+			long micros = nanos / 1000;
+			int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+			++histogram[Math.min(bucket, BUCKETS - 1)];
+		}
+
+		/**
+		 * @return The average time per call, in microseconds.
+		 */
+		public double getAverage() {
+
+			return calls == 0 ? 0 : totalNanos * 1.0E-3D / calls;
+		}
+
+		/**
+		 * @return The upper bound (in microseconds) of the histogram bucket holding the given fraction of calls.
+		 */
+		public long getPercentile(double fraction) {
+
+			long target = (long) Math.ceil(calls * fraction);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; ++i) {
+				seen += histogram[i];
+				if (seen >= target) {
+					return 1L << i;
+				}
+			}
+			return 1L << BUCKETS - 1;
+		}
+	}
+
+}
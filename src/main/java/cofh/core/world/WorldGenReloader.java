@@ -0,0 +1,224 @@
+package cofh.core.world;
+
+import cofh.CoFHCore;
+import cofh.core.world.FeatureParser.GenEntry;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.util.text.TextComponentTranslation;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Reloads world generation without stopping the server.
+ *
+ * The files are read on a background thread, where unchanged files come from the parse cache. The result is applied at the start of the next server tick,
+ * and only entries that were added, removed or changed are registered or unregistered. Requests made while a read is running are coalesced into one more
+ * read once it finishes.
+ *
+ * If enabled, a {@link WatchService} on the world generation folder requests a reload once the files have been left alone for {@link #QUIET_MILLIS}.
+ */
+public class WorldGenReloader {
+
+	public static final long QUIET_MILLIS = 1000;
+
+	public static boolean watchFiles = false;
+
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "CoFH World Generation Reload");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+	private static final List<ICommandSender> senders = new ArrayList<>();
+
+	private static boolean running;
+	private static boolean pending;
+	private static Watcher watcher;
+
+	private WorldGenReloader() {
+
+	}
+
+	public static void initialize() {
+
+		String comment = "If TRUE, changes to the world generation files are detected and applied while the server is running.";
+		watchFiles = CoFHCore.CONFIG_CORE.getConfiguration().getBoolean("WatchFiles", "World", watchFiles, comment);
+	}
+
+	/**
+	 * Requests a reload. The sender, if any, is told the result once it has been applied.
+	 */
+	public static synchronized void requestReload(ICommandSender sender) {
+
+		if (sender != null) {
+			senders.add(sender);
+		}
+		if (running) {
+			pending = true;
+			return;
+		}
+		running = true;
+		executor.execute(WorldGenReloader::read);
+	}
+
+	/**
+	 * Applies any finished reloads. Called on the server thread, between ticks.
+	 */
+	public static void tick() {
+
+		for (Result result; (result = results.poll()) != null; ) {
+			int[] counts = FeatureParser.applyGenerationEntries(result.entries);
+			CoFHCore.LOG.info(String.format("Reloaded world generation: %d added, %d changed, %d removed.", counts[0], counts[1], counts[2]));
+			for (ICommandSender sender : result.senders) {
+				sender.sendMessage(new TextComponentTranslation("chat.cofh.command.reloadworldgen.success", counts[0], counts[1], counts[2]));
+			}
+		}
+	}
+
+	public static synchronized void startWatching() {
+
+		if (!watchFiles || watcher != null) {
+			return;
+		}
+		try {
+			watcher = new Watcher(FeatureParser.getWorldGenFolder().toPath());
+		} catch (IOException e) {
+			CoFHCore.LOG.error("Could not watch the world generation files for changes.", e);
+			return;
+		}
+		Thread thread = new Thread(watcher, "CoFH World Generation Watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public static synchronized void stopWatching() {
+
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+		results.clear();
+		senders.clear();
+	}
+
+	/* HELPERS */
+	private static void read() {
+
+		List<ICommandSender> waiting;
+		synchronized (WorldGenReloader.class) {
+			waiting = new ArrayList<>(senders);
+			senders.clear();
+		}
+		List<GenEntry> entries = null;
+		try {
+			entries = FeatureParser.readGenerationFiles();
+		} catch (Throwable t) {
+			CoFHCore.LOG.error("Could not reload the world generation files.", t);
+		}
+		if (entries != null) {
+			results.add(new Result(entries, waiting));
+		}
+		synchronized (WorldGenReloader.class) {
+			if (pending) {
+				pending = false;
+				executor.execute(WorldGenReloader::read);
+			} else {
+				running = false;
+			}
+		}
+	}
+
+	private static class Result {
+
+		final List<GenEntry> entries;
+		final List<ICommandSender> senders;
+
+		Result(List<GenEntry> entries, List<ICommandSender> senders) {
+
+			this.entries = entries;
+			this.senders = senders;
+		}
+	}
+
+	private static class Watcher implements Runnable {
+
+		final WatchService service;
+		volatile boolean closed;
+
+		Watcher(Path root) throws IOException {
+
+			service = root.getFileSystem().newWatchService();
+			register(root);
+		}
+
+		void register(Path root) throws IOException {
+
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+
+					dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		void close() {
+
+			closed = true;
+			try {
+				service.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+		}
+
+		@Override
+		public void run() {
+
+			long lastChange = 0;
+			boolean changed = false;
+			while (!closed) {
+				WatchKey key;
+				try {
+					key = service.poll(QUIET_MILLIS / 4, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException | ClosedWatchServiceException e) {
+					return;
+				}
+				if (key != null) {
+					Path dir = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == ENTRY_CREATE) {
+							Path child = dir.resolve((Path) event.context());
+							if (Files.isDirectory(child)) {
+								try {
+									register(child);
+								} catch (IOException e) {
+									CoFHCore.LOG.warn("Could not watch " + child + " for changes.");
+								}
+							}
+						}
+					}
+					key.reset();
+					changed = true;
+					lastChange = System.currentTimeMillis();
+				} else if (changed && System.currentTimeMillis() - lastChange >= QUIET_MILLIS) {
+					changed = false;
+					CoFHCore.LOG.info("World generation files changed; reloading.");
+					requestReload(null);
+				}
+			}
+		}
+	}
+
+}
@@ -2,20 +2,16 @@ package cofh.core.world;
 
 import cofh.CoFHCore;
 import cofh.core.world.TickHandlerWorld.RetroChunkCoord;
-import cofh.lib.util.ChunkCoord;
-import cofh.lib.util.LinkedHashList;
 import cofh.lib.world.IFeatureGenerator;
 import cofh.lib.world.IFeatureHandler;
+import cofh.lib.world.feature.FeatureBase.GenRestriction;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.set.hash.THashSet;
+import gnu.trove.set.hash.TIntHashSet;
 import net.minecraft.block.BlockFalling;
-import net.minecraft.block.state.IBlockState;
-import net.minecraft.init.Blocks;
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.nbt.NBTTagList;
-import net.minecraft.nbt.NBTTagString;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
-import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.IChunkGenerator;
 import net.minecraft.world.chunk.IChunkProvider;
 import net.minecraftforge.common.MinecraftForge;
@@ -31,17 +27,30 @@ import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.registry.GameRegistry;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 
 	private static List<IFeatureGenerator> features = new ArrayList<>();
 	private static Set<String> featureNames = new THashSet<>();
+	private static FeatureIndex featureIndex = new FeatureIndex();
 	private static Set<EventType> vanillaGenEvents = new THashSet<>();
-	private static LinkedHashList<ChunkReference> populatingChunks = new LinkedHashList<>();
-
-	private static long genHash = 0;
+	/* Chunks between PopulateChunkEvent.Pre and the end of their population, per dimension, with POPULATING and HAS_VILLAGE flags. */
+	private static TIntObjectHashMap<ChunkKeyMap> populatingChunks = new TIntObjectHashMap<>();
+	/* Populating chunks found by the chunk load event, which may fire off the server thread. Only chunks saved mid-population end up here. */
+	private static ConcurrentLinkedQueue<ChunkReference> loadedPopulatingChunks = new ConcurrentLinkedQueue<>();
+
+	private static FeatureFingerprint fingerprint = new FeatureFingerprint();
+	private static TObjectIntHashMap<String> featureVersions = new TObjectIntHashMap<>();
+	/* the chunk load event may fire on the chunk IO thread, so it reads only this, which is replaced whenever the features change */
+	private static volatile FeatureSet featureSet = new FeatureSet(0, new String[0]);
+	private static FeatureRandom[] randoms = new FeatureRandom[0];
+	private static GenContext[] contexts = new GenContext[0];
+	private static int genDepth;
 
 	private static final String TAG_NAME = "CoFHWorld";
+	private static final int POPULATING = 1;
+	private static final int HAS_VILLAGE = 2;
 	private static final int MAX_BEDROCK_LAYERS = 8;
 
 	private static int layersBedrock = 1;
@@ -50,6 +59,8 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 	private static boolean retroFlatBedrock = false;
 	private static boolean retroGeneration = false;
 	private static boolean forceFullRegeneration = false;
+	private static boolean deferCrossChunkWrites = true;
+	private static boolean batchRetroUpdates = true;
 
 	static boolean genReplaceVanilla = false;
 
@@ -88,6 +99,12 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		comment = "If TRUE, world generation handled by CoFH Core will be retroactively applied to existing chunks.";
 		retroGeneration = CoFHCore.CONFIG_CORE.getConfiguration().getBoolean("RetroactiveGeneration", category, retroGeneration, comment);
 
+		comment = "If TRUE, features that reach into chunks that are not loaded do not make those chunks load or generate. Their blocks there are placed once the chunk is populated or loaded.";
+		deferCrossChunkWrites = CoFHCore.CONFIG_CORE.getConfiguration().getBoolean("DeferCrossChunkWrites", category, deferCrossChunkWrites, comment);
+
+		comment = "If TRUE, RetroGen places blocks without updating light, neighbors and clients for every block; each changed chunk is relit and resent to players once instead.";
+		batchRetroUpdates = CoFHCore.CONFIG_CORE.getConfiguration().getBoolean("RetroactiveGenerationBatchUpdates", category, batchRetroUpdates, comment);
+
 		category = "World.Bedrock";
 
 		comment = "If TRUE, the bedrock layer will be flattened.";
@@ -99,16 +116,25 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		comment = "If TRUE, Flat Bedrock will retroactively be applied to existing chunks, if enabled.";
 		retroFlatBedrock = CoFHCore.CONFIG_CORE.getConfiguration().getBoolean("FlatBedrockRetroactive", category, retroFlatBedrock, comment);
 
+		GenScheduler.initialize();
+		PregenThrottle.initialize();
+		WorldGenReloader.initialize();
+		CascadeDetector.initialize();
+
 		GameRegistry.registerWorldGenerator(instance, 0);
 		MinecraftForge.EVENT_BUS.register(instance);
 		MinecraftForge.ORE_GEN_BUS.register(instance);
 
-		GameRegistry.registerWorldGenerator((random, chunkX, chunkZ, world, chunkGenerator, chunkProvider) -> populatingChunks.remove(new ChunkReference(world.provider.getDimension(), chunkX, chunkZ)), Integer.MAX_VALUE);
+		GameRegistry.registerWorldGenerator((random, chunkX, chunkZ, world, chunkGenerator, chunkProvider) -> {
+			drainPopulatingChunks();
+			ChunkKeyMap chunks = populatingChunks.get(world.provider.getDimension());
+			if (chunks != null) {
+				chunks.remove(GenJournal.pack(chunkX, chunkZ));
+			}
+		}, Integer.MAX_VALUE);
 
-		if (genFlatBedrock & retroFlatBedrock | retroGeneration) {
-			// TODO: remove this condition when pregen works? (see handler for alternate)
-			MinecraftForge.EVENT_BUS.register(TickHandlerWorld.instance);
-		}
+		MinecraftForge.EVENT_BUS.register(TickHandlerWorld.instance);
+		MinecraftForge.EVENT_BUS.register(CascadeDetector.instance);
 	}
 
 	public boolean removeFeature(IFeatureGenerator feature) {
@@ -120,7 +146,9 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		if (featureNames.contains(featureName)) {
 			featureNames.remove(featureName);
 			features.remove(feature);
-			genHash -= featureName.hashCode();
+			featureIndex.remove(feature);
+			fingerprint.remove(featureName, featureVersions.get(featureName));
+			publishFeatureSet();
 		}
 		return true;
 	}
@@ -132,35 +160,53 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 	@SubscribeEvent
 	public void populateChunkEvent(PopulateChunkEvent.Pre event) {
 
-		populatingChunks.add(new ChunkReference(event.getWorld().provider.getDimension(), event.getChunkX(), event.getChunkZ()));
+		drainPopulatingChunks();
+		setPopulating(event.getWorld().provider.getDimension(), event.getChunkX(), event.getChunkZ(), POPULATING);
 	}
 
 	@SubscribeEvent
 	public void populateChunkEvent(PopulateChunkEvent.Post event) {
 
-		populatingChunks.get(new ChunkReference(event.getWorld().provider.getDimension(), event.getChunkX(), event.getChunkZ())).hasVillage = event.isHasVillageGenerated();
+		drainPopulatingChunks();
+		int dim = event.getWorld().provider.getDimension();
+		if (getPopulating(dim, event.getChunkX(), event.getChunkZ()) != 0) {
+			setPopulating(dim, event.getChunkX(), event.getChunkZ(), event.isHasVillageGenerated() ? POPULATING | HAS_VILLAGE : POPULATING);
+		}
 	}
 
 	@SubscribeEvent
 	public void handleChunkSaveEvent(ChunkDataEvent.Save event) {
 
 		NBTTagCompound genTag = event.getData().getCompoundTag(TAG_NAME);
+		World world = event.getWorld();
+		int chunkX = event.getChunk().xPosition, chunkZ = event.getChunk().zPosition;
 
-		ChunkReference chunk = populatingChunks.get(event.getChunk());
-		if (chunk != null) {
+		drainPopulatingChunks();
+		int populating = getPopulating(world.provider.getDimension(), chunkX, chunkZ);
+		if (populating != 0) {
 			genTag.setBoolean("Populating", true);
-			genTag.setBoolean("HasVillage", chunk.hasVillage);
+			genTag.setBoolean("HasVillage", (populating & HAS_VILLAGE) != 0);
+			return;
+		}
+		genTag.removeTag("List");
+		genTag.removeTag("Hash");
+		RetroChunkCoord queued = TickHandlerWorld.getQueuedRetroGen(world, chunkX, chunkZ);
+		if (queued != null) {
+			/* still waiting for RetroGen: record what it actually has, so it is queued again when it is next loaded */
+			genTag.setIntArray("Features", FeatureDictionary.toIntArray(queued.getGeneratedFeatures()));
+			genTag.removeTag("Bedrock");
+			genTag.removeTag("Fingerprint");
+			FeatureDictionary.saveIfDirty();
+			event.getData().setTag(TAG_NAME, genTag);
 			return;
 		}
 		if (genFlatBedrock) {
 			genTag.setBoolean("Bedrock", true);
 		}
-		NBTTagList featureList = new NBTTagList();
-		for (int i = 0; i < features.size(); i++) {
-			featureList.appendTag(new NBTTagString(features.get(i).getFeatureName()));
-		}
-		genTag.setTag("List", featureList);
-		genTag.setLong("Hash", genHash);
+		FeatureSet current = featureSet;
+		genTag.setIntArray("Features", FeatureDictionary.toIntArray(current.getGeneratedBits()));
+		genTag.setLong("Fingerprint", current.fingerprint);
+		FeatureDictionary.saveIfDirty();
 
 		event.getData().setTag(TAG_NAME, genTag);
 	}
@@ -173,33 +219,37 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		boolean regen = false;
 		NBTTagCompound tag = (NBTTagCompound) event.getData().getTag(TAG_NAME);
 
+		int chunkX = event.getChunk().xPosition, chunkZ = event.getChunk().zPosition;
 		if (tag != null && tag.getBoolean("Populating")) {
-			ChunkReference chunk = new ChunkReference(dim, event.getChunk().xPosition, event.getChunk().zPosition);
-			chunk.hasVillage = tag.getBoolean("HasVillage");
-			populatingChunks.add(chunk);
+			loadedPopulatingChunks.offer(new ChunkReference(dim, chunkX, chunkZ, tag.getBoolean("HasVillage")));
 			return;
 		}
 
-		NBTTagList list = null;
-		ChunkCoord cCoord = new ChunkCoord(event.getChunk());
+		long[] generated = null;
+		FeatureSet current = featureSet;
 
 		if (tag != null) {
 			boolean genFeatures = false;
 			boolean bedrock = retroFlatBedrock & genFlatBedrock && !tag.hasKey("Bedrock");
-			if (retroGeneration) {
-				genFeatures = tag.getLong("Hash") != genHash;
-				if (tag.hasKey("List")) {
-					list = tag.getTagList("List", Constants.NBT.TAG_STRING);
-					genFeatures |= list.tagCount() != features.size();
+			if (tag.hasKey("Fingerprint") && tag.getLong("Fingerprint") == current.fingerprint) {
+				/* kept with the queued chunk, so a save before its RetroGen records what it has */
+				generated = current.getGeneratedBits();
+			} else {
+				/* the feature set changed; only features that were added since need generating */
+				if (tag.hasKey("Features")) {
+					generated = FeatureDictionary.fromIntArray(tag.getIntArray("Features"));
+				} else if (tag.hasKey("List")) {
+					generated = FeatureDictionary.fromList(tag.getTagList("List", Constants.NBT.TAG_STRING));
 				}
+				genFeatures = retroGeneration && (generated == null || !FeatureDictionary.containsAll(generated, current.getGeneratedBits()));
 			}
 
 			if (bedrock) {
-				CoFHCore.LOG.debug("Queuing RetroGen for flattening bedrock for the chunk at " + cCoord.toString() + ".");
+				CoFHCore.LOG.debug("Queuing RetroGen for flattening bedrock for the chunk at [" + chunkX + ", " + chunkZ + "].");
 				regen = true;
 			}
 			if (genFeatures) {
-				CoFHCore.LOG.debug("Queuing RetroGen for features for the chunk at " + cCoord.toString() + ".");
+				CoFHCore.LOG.debug("Queuing RetroGen for features for the chunk at [" + chunkX + ", " + chunkZ + "].");
 				regen = true;
 			}
 		} else {
@@ -207,17 +257,7 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		}
 
 		if (regen) {
-			// TODO: this is threaded. should we synchronize?
-			ArrayDeque<RetroChunkCoord> chunks = TickHandlerWorld.chunksToGen.get(dim);
-
-			if (chunks == null) {
-				TickHandlerWorld.chunksToGen.put(dim, new ArrayDeque<>(128));
-				chunks = TickHandlerWorld.chunksToGen.get(dim);
-			}
-			if (chunks != null) {
-				chunks.addLast(new RetroChunkCoord(cCoord, list));
-				TickHandlerWorld.chunksToGen.put(dim, chunks);
-			}
+			TickHandlerWorld.queueRetroGen(dim, new RetroChunkCoord(chunkX, chunkZ, generated));
 		}
 	}
 
@@ -236,6 +276,7 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 	@Override
 	public void generate(Random random, int chunkX, int chunkZ, World world, IChunkGenerator chunkGenerator, IChunkProvider chunkProvider) {
 
+		DeferredWrites.apply(world, chunkX, chunkZ);
 		generateWorld(random, chunkX, chunkZ, world, true);
 	}
 
@@ -254,17 +295,85 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		}
 		featureNames.add(featureName);
 		features.add(feature);
-		genHash += featureName.hashCode();
+		featureIndex.add(feature);
+		fingerprint.add(featureName, featureVersions.get(featureName));
+		publishFeatureSet();
 
 		return true;
 	}
 
 	/* HELPER FUNCTIONS */
+	private static void publishFeatureSet() {
+
+		String[] keys = new String[features.size()];
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = getDictionaryKey(features.get(i).getFeatureName());
+		}
+		featureSet = new FeatureSet(fingerprint.get(), keys);
+	}
+
+	private static void drainPopulatingChunks() {
+
+		for (ChunkReference chunk; (chunk = loadedPopulatingChunks.poll()) != null; ) {
+			setPopulating(chunk.dimension, chunk.xPos, chunk.zPos, chunk.hasVillage ? POPULATING | HAS_VILLAGE : POPULATING);
+		}
+	}
+
+	private static int getPopulating(int dim, int chunkX, int chunkZ) {
+
+		ChunkKeyMap chunks = populatingChunks.get(dim);
+		return chunks == null ? 0 : chunks.get(GenJournal.pack(chunkX, chunkZ));
+	}
+
+	private static void setPopulating(int dim, int chunkX, int chunkZ, int flags) {
+
+		ChunkKeyMap chunks = populatingChunks.get(dim);
+		if (chunks == null) {
+			populatingChunks.put(dim, chunks = new ChunkKeyMap());
+		}
+		chunks.put(GenJournal.pack(chunkX, chunkZ), flags);
+	}
+
 	public static boolean addFeature(IFeatureGenerator feature) {
 
 		return instance.registerFeature(feature);
 	}
 
+	public static boolean isRegistered(String featureName) {
+
+		return featureNames.contains(featureName);
+	}
+
+	/**
+	 * Sets the version of a feature, before it is registered. Changing the version of a feature makes RetroGen treat it as a new feature, and generate it
+	 * again in existing chunks.
+	 */
+	public static void setFeatureVersion(String featureName, int version) {
+
+		if (version == 0) {
+			featureVersions.remove(featureName);
+		} else {
+			featureVersions.put(featureName, version);
+		}
+	}
+
+	/**
+	 * @return The name the feature is recorded under in {@link FeatureDictionary}.
+	 */
+	static String getDictionaryKey(String featureName) {
+
+		int version = featureVersions.get(featureName);
+		return version == 0 ? featureName : featureName + "@" + version;
+	}
+
+	/**
+	 * Lets a registered feature be skipped entirely in dimensions it cannot generate in.
+	 */
+	public static void setDimensionRestriction(IFeatureGenerator feature, GenRestriction restriction, TIntHashSet dimensions) {
+
+		featureIndex.setDimensionRestriction(feature, restriction, dimensions);
+	}
+
 	public void generateWorld(Random random, int chunkX, int chunkZ, World world, boolean newGen) {
 
 		replaceBedrock(random, chunkX, chunkZ, world, newGen | forceFullRegeneration);
@@ -272,12 +381,21 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		if (!newGen & !retroGeneration) {
 			return;
 		}
-		ChunkReference pos = new ChunkReference(world.provider.getDimension(), chunkX, chunkZ);
-		pos = populatingChunks.get(pos);
-		boolean hasVillage = pos == null ? false : pos.hasVillage;
-		for (IFeatureGenerator feature : features) {
-			BlockFalling.fallInstantly = true;
-			feature.generateFeature(random, chunkX, chunkZ, world, hasVillage, newGen | forceFullRegeneration);
+		drainPopulatingChunks();
+		boolean hasVillage = (getPopulating(world.provider.getDimension(), chunkX, chunkZ) & HAS_VILLAGE) != 0;
+		GenContext context = enterGeneration(world, chunkX, chunkZ, hasVillage);
+		FeatureRandom featureRandom = randoms[genDepth - 1];
+		BoundedWorld bounded = getView(world, context, newGen);
+		try {
+			World view = bounded != null ? bounded : world;
+			long chunkSeed = FeatureRandom.getChunkSeed(world.getSeed(), chunkX, chunkZ);
+			for (IFeatureGenerator feature : featureIndex.get(world.provider.getDimension())) {
+				BlockFalling.fallInstantly = true;
+				featureRandom.setFeatureSeed(chunkSeed, feature.getFeatureName());
+				generateFeature(feature, featureRandom, context, view, newGen | forceFullRegeneration);
+			}
+		} finally {
+			exitGeneration(context, bounded);
 		}
 		BlockFalling.fallInstantly = false;
 		if (!newGen) {
@@ -287,7 +405,7 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 
 	public void generateWorld(Random random, RetroChunkCoord chunk, World world, boolean newGen) {
 
-		int chunkX = chunk.coord.chunkX, chunkZ = chunk.coord.chunkZ;
+		int chunkX = chunk.chunkX, chunkZ = chunk.chunkZ;
 		if ((newGen | retroGeneration) & forceFullRegeneration) {
 			generateWorld(random, chunkX, chunkZ, world, newGen);
 			return;
@@ -298,16 +416,28 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		if (!newGen & !retroGeneration) {
 			return;
 		}
-		THashSet<String> genned = chunk.generatedFeatures;
-		ChunkReference pos = new ChunkReference(world.provider.getDimension(), chunkX, chunkZ);
-		pos = populatingChunks.get(pos);
-		boolean hasVillage = pos == null ? false : pos.hasVillage;
-		for (IFeatureGenerator feature : features) {
-			if (genned.contains(feature.getFeatureName())) {
-				continue;
+		int dim = world.provider.getDimension();
+		drainPopulatingChunks();
+		boolean hasVillage = (getPopulating(dim, chunkX, chunkZ) & HAS_VILLAGE) != 0;
+		IFeatureGenerator[] list = featureIndex.get(dim);
+		int[] indices = featureIndex.getDictionaryIndices(dim);
+		GenContext context = enterGeneration(world, chunkX, chunkZ, hasVillage);
+		FeatureRandom featureRandom = randoms[genDepth - 1];
+		BoundedWorld bounded = getView(world, context, newGen);
+		try {
+			World view = bounded != null ? bounded : world;
+			long chunkSeed = FeatureRandom.getChunkSeed(world.getSeed(), chunkX, chunkZ);
+			for (int i = 0; i < list.length; ++i) {
+				if (chunk.hasFeature(indices[i])) {
+					continue;
+				}
+				IFeatureGenerator feature = list[i];
+				BlockFalling.fallInstantly = true;
+				featureRandom.setFeatureSeed(chunkSeed, feature.getFeatureName());
+				generateFeature(feature, featureRandom, context, view, newGen | forceFullRegeneration);
 			}
-			BlockFalling.fallInstantly = true;
-			feature.generateFeature(random, chunkX, chunkZ, world, hasVillage, newGen | forceFullRegeneration);
+		} finally {
+			exitGeneration(context, bounded);
 		}
 		BlockFalling.fallInstantly = false;
 		if (!newGen) {
@@ -315,85 +445,82 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		}
 	}
 
-	public void replaceBedrock(Random random, int chunkX, int chunkZ, World world, boolean newGen) {
+	/**
+	 * @return The view the outermost level of generation writes through, or null if it writes to the world directly.
+	 */
+	private static BoundedWorld getView(World world, GenContext context, boolean newGen) {
 
-		if (!genFlatBedrock | !newGen & !retroFlatBedrock) {
+		if (genDepth != 1) {
+			return null;
+		}
+		return BoundedWorld.get(world, context, deferCrossChunkWrites, !newGen && batchRetroUpdates);
+	}
+
+	/**
+	 * Generation nests when a feature makes another chunk populate; every level gets its own random and context, and only the outermost uses a
+	 * {@link BoundedWorld}.
+	 */
+	private static GenContext enterGeneration(World world, int chunkX, int chunkZ, boolean hasVillage) {
+
+		if (genDepth == randoms.length) {
+			randoms = Arrays.copyOf(randoms, genDepth + 1);
+			randoms[genDepth] = new FeatureRandom();
+			contexts = Arrays.copyOf(contexts, genDepth + 1);
+			contexts[genDepth] = new GenContext();
+		}
+		GenContext context = contexts[genDepth++];
+		context.begin(world, chunkX, chunkZ, hasVillage);
+		return context;
+	}
+
+	private static void exitGeneration(GenContext context, BoundedWorld bounded) {
+
+		--genDepth;
+		if (bounded != null) {
+			bounded.finish();
+		}
+		context.end();
+	}
+
+	private static void generateFeature(IFeatureGenerator feature, Random random, GenContext context, World world, boolean newGen) {
+
+		if (CascadeDetector.enabled) {
+			CascadeDetector.enter(feature.getFeatureName(), world.provider.getDimension(), context.chunkX, context.chunkZ);
+			try {
+				generateProfiledFeature(feature, random, context, world, newGen);
+			} finally {
+				CascadeDetector.exit();
+			}
 			return;
 		}
-		int offsetX = chunkX * 16 + 8;
-		int offsetZ = chunkZ * 16 + 8;
+		generateProfiledFeature(feature, random, context, world, newGen);
+	}
 
-		/* Determine if this is a void age; halt if so. */
-		boolean isVoidAge = !world.getBlockState(new BlockPos(offsetX, 0, offsetZ)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
-		isVoidAge |= !world.getBlockState(new BlockPos(offsetX + 4, 0, offsetZ + 4)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
-		isVoidAge |= !world.getBlockState(new BlockPos(offsetX + 8, 0, offsetZ + 8)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
-		isVoidAge |= !world.getBlockState(new BlockPos(offsetX + 12, 0, offsetZ + 12)).getBlock().isAssociatedBlock(Blocks.BEDROCK);
+	private static void generateProfiledFeature(IFeatureGenerator feature, Random random, GenContext context, World world, boolean newGen) {
 
-		if (isVoidAge) {
+		if (!WorldGenProfiler.enabled) {
+			callFeature(feature, random, context, world, newGen);
 			return;
 		}
-		// TODO: pull out the ExtendedStorageArray and edit that directly. faster.
-		IBlockState filler = world.getBiome(new BlockPos(offsetX, 0, offsetZ)).fillerBlock;
-		// NOTE: filler block is dirt by default, the actual filler block for the biome is part of a method body
-		int meta = 0; // no meta field for filler
-		switch (world.provider.getDimension()) {
-			case -1:
-			/* This is a hack because Mojang coded the Nether wrong. Are you surprised? */
-				filler = Blocks.NETHERRACK.getDefaultState();
-				break;
-			case 0:
-			/*
-			 * Due to above note, overworld gets replaced with stone. other dimensions are on their own for helping us with the filler block
-			 */
-				filler = Blocks.STONE.getDefaultState();
-				break;
-			case 1:
-			/* This is a hack because Mojang coded The End wrong. Are you surprised? */
-				filler = Blocks.END_STONE.getDefaultState();
-				break;
-
-		}
-		for (int blockX = 0; blockX < 16; blockX++) {
-			for (int blockZ = 0; blockZ < 16; blockZ++) {
-				for (int blockY = 5; blockY > layersBedrock - 1; blockY--) {
-					BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
-					IBlockState state = world.getBlockState(pos);
-					if (state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
-						world.setBlockState(pos, filler, 2);
-					}
-				}
-				for (int blockY = layersBedrock - 1; blockY > 0; blockY--) {
-					BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
-					IBlockState state = world.getBlockState(pos);
-					if (!state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
-						world.setBlockState(pos, Blocks.BEDROCK.getDefaultState(), 2);
-					}
-				}
-			}
+		long start = System.nanoTime();
+		boolean generated = callFeature(feature, random, context, world, newGen);
+		WorldGenProfiler.record(world.provider.getDimension(), feature.getFeatureName(), System.nanoTime() - start, generated);
+	}
+
+	private static boolean callFeature(IFeatureGenerator feature, Random random, GenContext context, World world, boolean newGen) {
+
+		if (feature instanceof IContextFeatureGenerator) {
+			return ((IContextFeatureGenerator) feature).generateFeature(random, context, world, newGen);
 		}
-		/* Flatten bedrock on the top as well */
-		int worldHeight = world.getActualHeight();
-
-		if (world.getBlockState(new BlockPos(offsetX, worldHeight - 1, offsetZ)).getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
-			for (int blockX = 0; blockX < 16; blockX++) {
-				for (int blockZ = 0; blockZ < 16; blockZ++) {
-					for (int blockY = worldHeight - 2; blockY > worldHeight - 6; blockY--) {
-						BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
-						IBlockState state = world.getBlockState(pos);
-						if (state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
-							world.setBlockState(pos, filler, 2);
-						}
-					}
-					for (int blockY = worldHeight - layersBedrock; blockY < worldHeight - 1; blockY++) {
-						BlockPos pos = new BlockPos(offsetX + blockX, blockY, offsetZ + blockZ);
-						IBlockState state = world.getBlockState(pos);
-						if (!state.getBlock().isAssociatedBlock(Blocks.BEDROCK)) {
-							world.setBlockState(pos, Blocks.BEDROCK.getDefaultState(), 2);
-						}
-					}
-				}
-			}
+		return feature.generateFeature(random, context.chunkX, context.chunkZ, world, context.hasVillage, newGen);
+	}
+
+	public void replaceBedrock(Random random, int chunkX, int chunkZ, World world, boolean newGen) {
+
+		if (!genFlatBedrock | !newGen & !retroFlatBedrock) {
+			return;
 		}
+		BedrockFlattener.flatten(world, world.getChunkFromChunkCoords(chunkX, chunkZ), layersBedrock);
 	}
 
 	private static class ChunkReference {
@@ -401,33 +528,50 @@ public class WorldHandler implements IWorldGenerator, IFeatureHandler {
 		public final int dimension;
 		public final int xPos;
 		public final int zPos;
-		public boolean hasVillage;
+		public final boolean hasVillage;
 
-		public ChunkReference(int dim, int x, int z) {
+		public ChunkReference(int dim, int x, int z, boolean hasVillage) {
 
 			dimension = dim;
 			xPos = x;
 			zPos = z;
+			this.hasVillage = hasVillage;
 		}
 
-		@Override
-		public int hashCode() {
+	}
+
+	/**
+	 * The registered features as seen by chunk saves and loads. Built on the server thread and never changed once published; only the bitset, which depends
+	 * on the loaded {@link FeatureDictionary}, is worked out when first needed.
+	 */
+	private static final class FeatureSet {
+
+		final long fingerprint;
+		private final String[] keys;
+		private long[] bits;
+		private int bitsGeneration;
+
+		FeatureSet(long fingerprint, String[] keys) {
 
-			return xPos * 43 + zPos * 3 + dimension;
+			this.fingerprint = fingerprint;
+			this.keys = keys;
 		}
 
-		@Override
-		public boolean equals(Object o) {
+		/**
+		 * @return The bitset of all registered features, as recorded in a chunk once it has generated them.
+		 */
+		synchronized long[] getGeneratedBits() {
 
-			if (o == null || o.getClass() != getClass()) {
-				if (o instanceof Chunk) {
-					Chunk other = (Chunk) o;
-					return xPos == other.xPosition && zPos == other.zPosition && dimension == other.getWorld().provider.getDimension();
+			int generation = FeatureDictionary.getGeneration();
+			if (bits == null || bitsGeneration != generation) {
+				long[] set = new long[0];
+				for (String key : keys) {
+					set = FeatureDictionary.set(set, FeatureDictionary.getIndex(key));
 				}
-				return false;
+				bits = set;
+				bitsGeneration = generation;
 			}
-			ChunkReference other = (ChunkReference) o;
-			return other.dimension == dimension && other.xPos == xPos && other.zPos == zPos;
+			return bits;
 		}
 
 	}
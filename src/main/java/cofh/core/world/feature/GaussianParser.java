@@ -1,7 +1,6 @@
 package cofh.core.world.feature;
 
 import cofh.core.world.FeatureParser;
-import cofh.lib.util.numbers.ConstantProvider;
 import cofh.lib.util.numbers.INumberProvider;
 import cofh.lib.world.feature.FeatureBase;
 import cofh.lib.world.feature.FeatureBase.GenRestriction;
@@ -23,7 +22,7 @@ public class GaussianParser extends UniformParser {
 		ConfigObject genData = genObject.root();
 		INumberProvider centerHeight = FeatureParser.parseNumberValue(genData.get("center-height"));
 		INumberProvider spread = FeatureParser.parseNumberValue(genData.get("spread"));
-		INumberProvider rolls = genObject.hasPath("smoothness") ? FeatureParser.parseNumberValue(genData.get("smoothness")) : new ConstantProvider(2);
+		INumberProvider rolls = genObject.hasPath("smoothness") ? FeatureParser.parseNumberValue(genData.get("smoothness")) : FeatureParser.getConstant(2);
 
 		return new FeatureGenGaussian(featureName, gen, numClusters, rolls, centerHeight, spread, biomeRes, retrogen, dimRes);
 	}
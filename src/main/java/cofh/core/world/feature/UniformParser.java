@@ -10,7 +10,6 @@ import cofh.lib.world.feature.FeatureBase;
 import cofh.lib.world.feature.FeatureBase.GenRestriction;
 import cofh.lib.world.feature.FeatureGenUniform;
 import com.typesafe.config.Config;
-import com.typesafe.config.ConfigList;
 import com.typesafe.config.ConfigValue;
 import com.typesafe.config.ConfigValueType;
 import net.minecraft.init.Blocks;
@@ -120,29 +119,8 @@ public class UniformParser implements IFeatureParser {
 			feature.addBiomes(FeatureParser.parseBiomeRestrictions(genObject.getConfig("biome")));
 		}
 		if (feature.dimensionRestriction != GenRestriction.NONE) {
-			String field = "dimension";
-			ConfigValue data = genObject.getValue(field);
-			ConfigList restrictionList = null;
-			switch (data.valueType()) {
-				case OBJECT:
-					field += ".value";
-				case LIST:
-					restrictionList = genObject.getList(field);
-					break;
-				case NUMBER:
-					feature.addDimension(genObject.getNumber(field).intValue());
-					break;
-				default:
-					// unreachable
-					break;
-			}
-			if (restrictionList != null) {
-				for (int i = 0; i < restrictionList.size(); i++) {
-					ConfigValue val = restrictionList.get(i);
-					if (val.valueType() == ConfigValueType.NUMBER) {
-						feature.addDimension(((Number) val.unwrapped()).intValue());
-					}
-				}
+			for (int dim : FeatureParser.parseDimensionRestrictions(genObject).toArray()) {
+				feature.addDimension(dim);
 			}
 		}
 	}